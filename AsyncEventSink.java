@@ -0,0 +1,164 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An EventSink that hands events to a background thread through a fixed-size,
+ * lock-free ring buffer, so the thread reporting an event never waits on I/O.
+ *
+ * Any number of threads may report at once: each claims the next slot with a
+ * compare-and-set on a shared counter, fills it in and then publishes it. A
+ * single consumer thread passes published events, in order, to the delegate
+ * sink (usually Events.CONSOLE). If the buffer is full the event is dropped
+ * and counted rather than making the caller wait.
+ */
+public class AsyncEventSink implements EventSink, AutoCloseable {
+
+    private final int mask;
+    private final EventType[] types;
+    private final Object[] sources;
+    private final String[] texts;
+    private final int[] as;
+    private final int[] bs;
+    private final int[] cs;
+    private final AtomicLongArray published; // Sequence number last published in each slot
+
+    private final AtomicLong claimed = new AtomicLong();  // Next sequence number to hand out
+    private volatile long consumed;                       // Next sequence number the consumer will read
+    private final LongAdder dropped = new LongAdder();
+
+    private final EventSink delegate;
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a sink and starts its consumer thread.
+     *
+     * @param delegate the sink that receives events on the consumer thread
+     * @param capacity the number of slots in the ring (rounded up to a power of two)
+     */
+    public AsyncEventSink(EventSink delegate, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.types = new EventType[size];
+        this.sources = new Object[size];
+        this.texts = new String[size];
+        this.as = new int[size];
+        this.bs = new int[size];
+        this.cs = new int[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1L);
+        }
+        this.delegate = delegate;
+        this.consumer = new Thread(this::drain, "async-event-sink");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Overloaded constructor: prints events to the console from a 64K-slot ring.
+     */
+    public AsyncEventSink() {
+        this(Events.CONSOLE, 1 << 16);
+    }
+
+    @Override
+    public void accept(EventType type, Object source, String text, int a, int b, int c) {
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq - consumed > mask) {
+                dropped.increment(); // Ring is full
+                return;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+        int slot = (int) seq & mask;
+        types[slot] = type;
+        sources[slot] = source;
+        texts[slot] = text;
+        as[slot] = a;
+        bs[slot] = b;
+        cs[slot] = c;
+        published.set(slot, seq); // Makes the fields above visible to the consumer
+    }
+
+    /**
+     * Returns how many events were dropped because the ring was full.
+     *
+     * @return the number of dropped events
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Delivers every event already reported, then stops the consumer thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* Consumer thread: deliver published events in order, parking briefly when there are none */
+    private void drain() {
+        long next = 0;
+        while (true) {
+            int slot = (int) next & mask;
+            if (published.get(slot) == next) {
+                delegate.accept(types[slot], sources[slot], texts[slot], as[slot], bs[slot], cs[slot]);
+                sources[slot] = null; // Don't keep buildings alive from the ring
+                texts[slot] = null;
+                consumed = ++next;
+            } else if (running || claimed.get() != next) {
+                LockSupport.parkNanos(50_000);
+            } else {
+                return; // Closed and everything claimed has been delivered
+            }
+        }
+    }
+
+    /**
+     * Compares the cost of entering and leaving a building a million times with
+     * events printed to the console asynchronously and with events turned off.
+     */
+    public static void main(String[] args) {
+        Building building = new Building("Ford Hall", "100 Green Street Northampton, MA 01063", 4);
+        int n = 1_000_000;
+
+        EventSink previous = Events.getSink();
+        try (AsyncEventSink async = new AsyncEventSink(FORMAT_ONLY, 1 << 16)) {
+            Events.setSink(async);
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                building.enter();
+                building.goUp();
+                building.goDown();
+                building.exit();
+            }
+            double asyncNanos = (System.nanoTime() - start) / (double) n;
+            Events.setSink(Events.SILENT);
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                building.enter();
+                building.goUp();
+                building.goDown();
+                building.exit();
+            }
+            double silentNanos = (System.nanoTime() - start) / (double) n;
+            Events.setSink(previous);
+            System.out.println("Async sink:  " + String.format("%.1f", asyncNanos) + " ns per visit (" + async.getDropped() + " events dropped)");
+            System.out.println("Silent sink: " + String.format("%.1f", silentNanos) + " ns per visit");
+        }
+    }
+
+    /* Formats each event (as the console would) but throws the text away, so the demo doesn't flood the terminal */
+    private static final EventSink FORMAT_ONLY = (type, source, text, a, b, c) -> type.format(source, text, a, b, c);
+}
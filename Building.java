@@ -1,10 +1,15 @@
-public class Building {
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class Building implements BuildingRequirements {
 
     protected String name;
     protected String address;
     protected int nFloors;
     protected int activeFloor = -1; // Default value indicating we are not inside this building
 
+    private static final int OCCUPANCY_STRIDE = 16; // Ints between floor counters, so each floor gets its own cache line
+    private volatile AtomicIntegerArray occupancy;  // Visitors per floor from visit(); created by the first visit
+
     /* Default constructor */
     public Building() {
         this("<Name Unknown>", "<Address Unknown>", 1);
@@ -44,37 +49,49 @@ public class Building {
         return this.nFloors;
     }
 
+    /**
+     * Whether visitors can ride straight to any floor. Plain buildings allow
+     * goToFloor() anywhere, so they count as having an elevator; House overrides this.
+     *
+     * @return true if the building has an elevator
+     */
+    public boolean hasElevator() {
+        return true;
+    }
+
+    /** The outcome of a non-throwing navigation method such as tryGoToFloor() */
+    public enum NavResult {
+        OK, ALREADY_INSIDE, NOT_INSIDE, INVALID_FLOOR, NO_ELEVATOR, NOT_ON_GROUND_FLOOR
+    }
+
     /* Navigation methods */
     public Building enter() {
-        if (activeFloor != -1) {
-            throw new RuntimeException("You are already inside this Building.");
+        NavResult result = tryEnter();
+        if (result != NavResult.OK) {
+            throw navigationError(result);
         }
-        this.activeFloor = 1;
-        System.out.println("You are now inside " + this.name + " on the ground floor.");
+        Events.emit(EventType.ENTERED, this, this.name);
         return this; // Return a pointer to the current building
     }
 
     public Building exit() {
-        if (this.activeFloor == -1) {
+        NavResult result = tryExit();
+        if (result == NavResult.NOT_INSIDE) {
             throw new RuntimeException("You are not inside this Building. Must call enter() before exit().");
         }
-        if (this.activeFloor > 1) {
-            throw new RuntimeException("You have fallen out a window from floor #" +this.activeFloor + "!");
+        if (result != NavResult.OK) {
+            throw navigationError(result);
         }
-        System.out.println("You have left " + this.name + ".");
-        this.activeFloor = -1; // We're leaving the building, so we no longer have a valid active floor
+        Events.emit(EventType.EXITED, this, this.name);
         return null; // We're outside now, so the building is null
     }
 
     public void goToFloor(int floorNum) {
-        if (this.activeFloor == -1) {
-            throw new RuntimeException("You are not inside this Building. Must call enter() before navigating between floors.");
-        }
-        if (floorNum < 1 || floorNum > this.nFloors) {
-            throw new RuntimeException("Invalid floor number. Valid range for this Building is 1-" + this.nFloors +".");
+        NavResult result = tryGoToFloor(floorNum);
+        if (result != NavResult.OK) {
+            throw navigationError(result);
         }
-        System.out.println("You are now on floor #" + floorNum + " of " + this.name);
-        this.activeFloor = floorNum;
+        Events.emit(EventType.FLOOR_CHANGED, this, this.name, floorNum);
     }
 
     public void goUp() {
@@ -85,6 +102,148 @@ public class Building {
         this.goToFloor(this.activeFloor - 1);
     }
 
+    /*
+     * Non-throwing navigation: these return a NavResult instead of throwing, and
+     * print nothing, so simulations that expect many refused moves don't pay for
+     * building exceptions. The methods above are thin wrappers around them.
+     */
+    public NavResult tryEnter() {
+        if (this.activeFloor != -1) {
+            return NavResult.ALREADY_INSIDE;
+        }
+        this.activeFloor = 1;
+        return NavResult.OK;
+    }
+
+    public NavResult tryExit() {
+        if (this.activeFloor == -1) {
+            return NavResult.NOT_INSIDE;
+        }
+        if (this.activeFloor > 1) {
+            return NavResult.NOT_ON_GROUND_FLOOR;
+        }
+        this.activeFloor = -1; // We're leaving the building, so we no longer have a valid active floor
+        return NavResult.OK;
+    }
+
+    public NavResult tryGoToFloor(int floorNum) {
+        if (this.activeFloor == -1) {
+            return NavResult.NOT_INSIDE;
+        }
+        if (floorNum < 1 || floorNum > this.nFloors) {
+            return NavResult.INVALID_FLOOR;
+        }
+        this.activeFloor = floorNum;
+        return NavResult.OK;
+    }
+
+    public NavResult tryGoUp() {
+        return this.tryGoToFloor(this.activeFloor + 1);
+    }
+
+    public NavResult tryGoDown() {
+        return this.tryGoToFloor(this.activeFloor - 1);
+    }
+
+    /* The exception the throwing navigation methods raise for a refused move */
+    private RuntimeException navigationError(NavResult result) {
+        switch (result) {
+            case ALREADY_INSIDE:
+                return new RuntimeException("You are already inside this Building.");
+            case NOT_INSIDE:
+                return new RuntimeException("You are not inside this Building. Must call enter() before navigating between floors.");
+            case INVALID_FLOOR:
+                return new RuntimeException("Invalid floor number. Valid range for this Building is 1-" + this.nFloors +".");
+            case NO_ELEVATOR:
+                return new RuntimeException("This house doesn't have an elevator. You must use goUp() or goDown() one floor at a time.");
+            case NOT_ON_GROUND_FLOOR:
+                return new RuntimeException("You have fallen out a window from floor #" +this.activeFloor + "!");
+            default:
+                return new RuntimeException("Cannot move: " + result);
+        }
+    }
+
+    /* Multi-visitor sessions */
+
+    /**
+     * Lets a new visitor in on the first floor. Any number of visits can be
+     * going on at once, each from its own thread, alongside enter()/exit().
+     *
+     * @return the visitor's session, used to move between floors and leave
+     */
+    public Visit visit() {
+        moveVisitor(-1, 1);
+        Events.emit(EventType.ENTERED, this, this.name);
+        return new Visit(this);
+    }
+
+    /**
+     * Returns how many visitors are on a floor right now.
+     *
+     * @param floorNum the floor
+     * @return the number of visits on that floor
+     * @throws RuntimeException if the floor doesn't exist
+     */
+    public int getOccupancy(int floorNum) {
+        if (floorNum < 1 || floorNum > this.nFloors) {
+            throw new RuntimeException("Invalid floor number. Valid range for this Building is 1-" + this.nFloors +".");
+        }
+        AtomicIntegerArray counts = this.occupancy;
+        return counts == null ? 0 : counts.get(floorNum * OCCUPANCY_STRIDE);
+    }
+
+    /**
+     * Returns how many visitors are inside right now, across all floors.
+     *
+     * @return the number of visits in progress
+     */
+    public int getOccupancy() {
+        AtomicIntegerArray counts = this.occupancy;
+        int total = 0;
+        for (int f = 1; counts != null && f <= this.nFloors; f++) {
+            total += counts.get(f * OCCUPANCY_STRIDE);
+        }
+        return total;
+    }
+
+    /**
+     * Checks that a visitor may go from one floor to another, throwing if not.
+     * Subclasses with stricter rules (such as a House without an elevator) override this.
+     *
+     * @param fromFloor the visitor's floor
+     * @param toFloor   the floor they want to go to
+     */
+    protected void checkMove(int fromFloor, int toFloor) {
+        if (toFloor < 1 || toFloor > this.nFloors) {
+            throw new RuntimeException("Invalid floor number. Valid range for this Building is 1-" + this.nFloors +".");
+        }
+    }
+
+    /* Moves one visitor between floor counters; -1 means outside */
+    void moveVisitor(int fromFloor, int toFloor) {
+        AtomicIntegerArray counts = occupancyCounts();
+        if (toFloor != -1) {
+            counts.incrementAndGet(toFloor * OCCUPANCY_STRIDE);
+        }
+        if (fromFloor != -1) {
+            counts.decrementAndGet(fromFloor * OCCUPANCY_STRIDE);
+        }
+    }
+
+    private AtomicIntegerArray occupancyCounts() {
+        AtomicIntegerArray counts = this.occupancy;
+        if (counts == null) {
+            synchronized (this) {
+                counts = this.occupancy;
+                if (counts == null) {
+                    counts = new AtomicIntegerArray((this.nFloors + 1) * OCCUPANCY_STRIDE);
+                    this.occupancy = counts;
+                }
+            }
+        }
+        return counts;
+    }
+
     public void showOptions() {
         System.out.println("Available options at " + this.name + ":\n + enter() \n + exit() \n + goUp() \n + goDown()\n + goToFloor(n)");
     }
@@ -0,0 +1,134 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Operation counters, error counters and latency histograms for one building.
+ * Filled in by Instrumentation and exported over JMX.
+ *
+ * Latencies go into power-of-two buckets (one per bit of the nanosecond count),
+ * so recording a call is two counter increments and percentiles are accurate
+ * to within a factor of two.
+ */
+public class BuildingMetrics implements BuildingMetricsMXBean {
+
+    private static final int BUCKETS = 64;
+
+    private final String buildingName;
+    private final String buildingType;
+    private final ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<>();
+    private volatile long since = System.nanoTime();
+
+    /* Counters for one operation */
+    private static final class Operation {
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicLongArray latencies = new AtomicLongArray(BUCKETS); // Bucket b holds calls taking [2^(b-1), 2^b) ns
+    }
+
+    /**
+     * Constructs empty metrics for a building.
+     *
+     * @param building the building being measured
+     */
+    public BuildingMetrics(Building building) {
+        this.buildingName = building.getName();
+        this.buildingType = building.getClass().getSimpleName();
+    }
+
+    /**
+     * Records one call.
+     *
+     * @param operation the method called
+     * @param nanos     how long it took
+     * @param failed    whether it failed
+     */
+    public void record(String operation, long nanos, boolean failed) {
+        Operation op = operations.computeIfAbsent(operation, k -> new Operation());
+        op.calls.increment();
+        if (failed) {
+            op.errors.increment();
+        }
+        op.latencies.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(Math.max(nanos, 0L)));
+    }
+
+    public String getBuildingName() {
+        return this.buildingName;
+    }
+
+    public String getBuildingType() {
+        return this.buildingType;
+    }
+
+    public long getTotalCalls() {
+        long total = 0;
+        for (Operation op : operations.values()) {
+            total += op.calls.sum();
+        }
+        return total;
+    }
+
+    public long getTotalErrors() {
+        long total = 0;
+        for (Operation op : operations.values()) {
+            total += op.errors.sum();
+        }
+        return total;
+    }
+
+    public Map<String, Long> getCallCounts() {
+        TreeMap<String, Long> counts = new TreeMap<>();
+        operations.forEach((name, op) -> counts.put(name, op.calls.sum()));
+        return counts;
+    }
+
+    public Map<String, Long> getErrorCounts() {
+        TreeMap<String, Long> counts = new TreeMap<>();
+        operations.forEach((name, op) -> counts.put(name, op.errors.sum()));
+        return counts;
+    }
+
+    public Map<String, Double> getCallsPerSecond() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - since) / 1e9);
+        TreeMap<String, Double> rates = new TreeMap<>();
+        operations.forEach((name, op) -> rates.put(name, op.calls.sum() / seconds));
+        return rates;
+    }
+
+    public Map<String, Long> getLatencyP50Nanos() {
+        return percentile(0.50);
+    }
+
+    public Map<String, Long> getLatencyP99Nanos() {
+        return percentile(0.99);
+    }
+
+    public void reset() {
+        operations.clear();
+        since = System.nanoTime();
+    }
+
+    /* The upper bound of the bucket holding the given fraction of each operation's calls */
+    private Map<String, Long> percentile(double fraction) {
+        TreeMap<String, Long> result = new TreeMap<>();
+        operations.forEach((name, op) -> {
+            long total = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                total += op.latencies.get(b);
+            }
+            long target = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += op.latencies.get(b);
+                if (seen >= target && total > 0) {
+                    result.put(name, b >= 63 ? Long.MAX_VALUE : 1L << b);
+                    return;
+                }
+            }
+            result.put(name, 0L);
+        });
+        return result;
+    }
+}
@@ -0,0 +1,18 @@
+import java.util.Map;
+
+/**
+ * What JMX shows for one instrumented building. Operations are keyed by
+ * method name, e.g. "checkOut" or "sellCoffee"; latencies are in nanoseconds.
+ */
+public interface BuildingMetricsMXBean {
+    String getBuildingName();
+    String getBuildingType();
+    long getTotalCalls();
+    long getTotalErrors();
+    Map<String, Long> getCallCounts();
+    Map<String, Long> getErrorCounts();
+    Map<String, Double> getCallsPerSecond();
+    Map<String, Long> getLatencyP50Nanos();
+    Map<String, Long> getLatencyP99Nanos();
+    void reset();
+}
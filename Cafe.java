@@ -1,17 +1,55 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Represents a Cafe building which is a type of Building.
  * Implements the CafeRequirements interface to manage coffee sales and inventory.
+ *
+ * All four inventory counts are packed into one atomic long (16 bits each), so
+ * a sale takes its coffee, sugar, cream and cup in a single compare-and-set:
+ * any number of registers can sell at once without a lock, and a sale either
+ * takes everything it needs or nothing.
+ *
+ * Packing limits each count to MAX_STOCK. Stocking beyond that, whether when
+ * the cafe opens or when it restocks, is capped at MAX_STOCK. The only thing
+ * rejected is a coffee that needs more than MAX_STOCK of an item, since the
+ * cafe could never make it.
  */
-public class Cafe extends Building {
+public class Cafe extends Building implements CafeRequirements {
+
+    /** The most of any one item a cafe can stock (65,535); larger amounts are capped. */
+    public static final int MAX_STOCK = 0xFFFF;
+
+    // Bit positions of each count within the packed inventory
+    private static final int COFFEE_SHIFT = 48;
+    private static final int SUGAR_SHIFT = 32;
+    private static final int CREAM_SHIFT = 16;
+    private static final int CUPS_SHIFT = 0;
+
+    /**
+     * The outcome of a sale. Sales that fail say which item ran short first.
+     */
+    public enum SaleResult {
+        SOLD, NOT_ENOUGH_COFFEE, NOT_ENOUGH_SUGAR, NOT_ENOUGH_CREAM, NO_CUPS
+    }
 
     // Attributes for the cafe
-    private int nCoffeeOunces;  // Amount of coffee available in ounces
-    private int nSugarPackets;  // Number of sugar packets available
-    private int nCreams;        // Number of cream packets available
-    private int nCups;          // Number of cups available
+    private AtomicLong inventory;  // Coffee ounces, sugar packets, creams and cups, 16 bits each
+
+    // Running totals used by CafeRestocker to estimate how fast each item is used
+    private LongAdder coffeeOuncesUsed = new LongAdder();
+    private LongAdder sugarPacketsUsed = new LongAdder();
+    private LongAdder creamsUsed = new LongAdder();
+    private LongAdder cupsUsed = new LongAdder();
+    private LongAdder stockouts = new LongAdder();  // Sales that failed for lack of something
 
     /**
      * Constructor to initialize a Cafe object with its specific attributes.
+     * Each count is capped at MAX_STOCK, and a negative count is taken as none.
      *
      * @param name           Name of the cafe
      * @param address        Address of the cafe
@@ -23,10 +61,7 @@ public class Cafe extends Building {
      */
     public Cafe(String name, String address, int nFloors, int nCoffeeOunces, int nSugarPackets, int nCreams, int nCups) {
         super(name, address, nFloors);
-        this.nCoffeeOunces = nCoffeeOunces;
-        this.nSugarPackets = nSugarPackets;
-        this.nCreams = nCreams;
-        this.nCups = nCups;
+        this.inventory = new AtomicLong(pack(stock(nCoffeeOunces), stock(nSugarPackets), stock(nCreams), stock(nCups)));
     }
 
     /**
@@ -40,52 +75,81 @@ public class Cafe extends Building {
         this(name, address, nFloors, 500, 100, 100, 50); // Default stock values
     }
 
+    /* Inventory accessors */
+    public int getCoffeeOunces() {
+        return field(inventory.get(), COFFEE_SHIFT);
+    }
+
+    public int getSugarPackets() {
+        return field(inventory.get(), SUGAR_SHIFT);
+    }
+
+    public int getCreams() {
+        return field(inventory.get(), CREAM_SHIFT);
+    }
+
+    public int getCups() {
+        return field(inventory.get(), CUPS_SHIFT);
+    }
+
+    /* Usage totals since the cafe opened */
+    public long getCoffeeOuncesUsed() {
+        return coffeeOuncesUsed.sum();
+    }
+
+    public long getSugarPacketsUsed() {
+        return sugarPacketsUsed.sum();
+    }
+
+    public long getCreamsUsed() {
+        return creamsUsed.sum();
+    }
+
+    public long getCupsUsed() {
+        return cupsUsed.sum();
+    }
+
+    public long getStockouts() {
+        return stockouts.sum();
+    }
+
     /**
-     * Sells coffee by reducing the inventory and printing the details of the sale.
+     * Sells coffee by reducing the inventory and reporting the details of the sale as an event.
+     * If the cafe is short of anything, it restocks what's missing and tries again.
      *
      * @param size            The size of the coffee in ounces
      * @param nSugarPackets   The number of sugar packets required
      * @param nCreams         The number of cream packets required
+     * @throws RuntimeException if the order is bigger than the cafe could ever stock
      */
     public void sellCoffee(int size, int nSugarPackets, int nCreams) {
-        // Check if there is enough inventory for the sale
-        if (nCoffeeOunces >= size && this.nSugarPackets >= nSugarPackets && this.nCreams >= nCreams && nCups > 0) {
-            // Reduce the inventory accordingly
-            nCoffeeOunces -= size;
-            this.nSugarPackets -= nSugarPackets;
-            this.nCreams -= nCreams;
-            nCups -= 1; // Reduce one cup for each coffee sold
-
-            // Print a message to confirm the sale
-            System.out.println("Coffee sold! Size: " + size + " ounces, Sugar: " + nSugarPackets + " packets, Cream: " + nCreams + " packets.");
-        } else {
-            // If there isn't enough inventory, print a message indicating the problem
-            System.out.println("Unable to sell coffee. Not enough inventory.");
-
-            // Check and restock if necessary
-            if (nCoffeeOunces < size) {
-                System.out.println("Not enough coffee. Restocking...");
-                restock(100, 0, 0, 0); // Restock with 100 ounces of coffee
-            }
-
-            if (this.nSugarPackets < nSugarPackets) {
-                System.out.println("Not enough sugar packets. Restocking...");
-                restock(0, 50, 0, 0); // Restock with 50 sugar packets
-            }
-
-            if (this.nCreams < nCreams) {
-                System.out.println("Not enough cream packets. Restocking...");
-                restock(0, 0, 50, 0); // Restock with 50 cream packets
-            }
-
-            if (nCups <= 0) {
-                System.out.println("Not enough cups. Restocking...");
-                restock(0, 0, 0, 30); // Restock with 30 cups
+        if (size > MAX_STOCK || nSugarPackets > MAX_STOCK || nCreams > MAX_STOCK) {
+            throw new RuntimeException(tooBig());
+        }
+        SaleResult result;
+        while ((result = sell(size, nSugarPackets, nCreams)) != SaleResult.SOLD) {
+            // If there isn't enough inventory, report the problem and restock it
+            switch (result) {
+                case NOT_ENOUGH_COFFEE:
+                    Events.emit(EventType.RESTOCKING, this, "coffee");
+                    restock(100, 0, 0, 0); // Restock with 100 ounces of coffee
+                    break;
+                case NOT_ENOUGH_SUGAR:
+                    Events.emit(EventType.RESTOCKING, this, "sugar packets");
+                    restock(0, 50, 0, 0); // Restock with 50 sugar packets
+                    break;
+                case NOT_ENOUGH_CREAM:
+                    Events.emit(EventType.RESTOCKING, this, "cream packets");
+                    restock(0, 0, 50, 0); // Restock with 50 cream packets
+                    break;
+                default:
+                    Events.emit(EventType.RESTOCKING, this, "cups");
+                    restock(0, 0, 0, 30); // Restock with 30 cups
+                    break;
             }
-
-            // After restocking, retry selling
-            sellCoffee(size, nSugarPackets, nCreams);
         }
+        // Report the sale
+        Events.emit(EventType.COFFEE_SOLD, this, this.name, size, nSugarPackets, nCreams);
     }
 
     /**
@@ -98,19 +162,113 @@ public class Cafe extends Building {
         sellCoffee(size, 0, 0); // Default to no sugar or cream
     }
 
+    /**
+     * Tries to sell one coffee without printing or restocking. Safe to call from
+     * many threads at once: the coffee, sugar, cream and cup are taken together
+     * or not at all.
+     *
+     * @param size            The size of the coffee in ounces
+     * @param nSugarPackets   The number of sugar packets required
+     * @param nCreams         The number of cream packets required
+     * @return SOLD, or which item the cafe is short of
+     * @throws RuntimeException if any amount is negative
+     */
+    public SaleResult sell(int size, int nSugarPackets, int nCreams) {
+        if (size < 0 || nSugarPackets < 0 || nCreams < 0) {
+            throw new RuntimeException("Cannot sell a coffee with a negative amount of anything.");
+        }
+        SaleResult result = take(size, nSugarPackets, nCreams, 1);
+        if (result != SaleResult.SOLD) {
+            stockouts.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Takes the given amounts out of the inventory in one compare-and-set, or
+     * nothing if any item is short. Also used by CafeOrderPipeline to fill a
+     * whole batch of orders at once.
+     *
+     * @param coffee  Ounces of coffee
+     * @param sugar   Sugar packets
+     * @param cream   Cream packets
+     * @param cups    Cups
+     * @return SOLD, or which item the cafe is short of
+     */
+    SaleResult take(int coffee, int sugar, int cream, int cups) {
+        if (coffee > MAX_STOCK || sugar > MAX_STOCK || cream > MAX_STOCK || cups > MAX_STOCK) {
+            return shortage(0L, coffee, sugar, cream, cups); // More than the cafe could ever hold
+        }
+        long needed = pack(coffee, sugar, cream, cups);
+        while (true) {
+            long current = inventory.get();
+            SaleResult shortage = shortage(current, coffee, sugar, cream, cups);
+            if (shortage != null) {
+                return shortage;
+            }
+            // Every field covers its share, so one subtraction can't borrow across fields
+            if (inventory.compareAndSet(current, current - needed)) {
+                coffeeOuncesUsed.add(coffee);
+                sugarPacketsUsed.add(sugar);
+                creamsUsed.add(cream);
+                cupsUsed.add(cups);
+                return SaleResult.SOLD;
+            }
+        }
+    }
+
+    /* The first item the packed inventory is short of, or null if it has everything */
+    private static SaleResult shortage(long current, int size, int nSugarPackets, int nCreams, int nCups) {
+        if (field(current, COFFEE_SHIFT) < size) {
+            return SaleResult.NOT_ENOUGH_COFFEE;
+        }
+        if (field(current, SUGAR_SHIFT) < nSugarPackets) {
+            return SaleResult.NOT_ENOUGH_SUGAR;
+        }
+        if (field(current, CREAM_SHIFT) < nCreams) {
+            return SaleResult.NOT_ENOUGH_CREAM;
+        }
+        if (field(current, CUPS_SHIFT) < nCups) {
+            return SaleResult.NO_CUPS;
+        }
+        return null;
+    }
+
     /**
      * Restocks the inventory of coffee, sugar, cream, and cups.
+     * Each count is capped at MAX_STOCK, like the counts the cafe opens with.
+     * Also used by CafeRestocker.
      *
      * @param nCoffeeOunces  Amount of coffee to add in ounces
      * @param nSugarPackets  Number of sugar packets to add
      * @param nCreams        Number of cream packets to add
      * @param nCups          Number of cups to add
      */
-    private void restock(int nCoffeeOunces, int nSugarPackets, int nCreams, int nCups) {
-        this.nCoffeeOunces += nCoffeeOunces;
-        this.nSugarPackets += nSugarPackets;
-        this.nCreams += nCreams;
-        this.nCups += nCups;
+    void restock(int nCoffeeOunces, int nSugarPackets, int nCreams, int nCups) {
+        inventory.getAndUpdate(current -> pack(
+                stock((long) field(current, COFFEE_SHIFT) + nCoffeeOunces),
+                stock((long) field(current, SUGAR_SHIFT) + nSugarPackets),
+                stock((long) field(current, CREAM_SHIFT) + nCreams),
+                stock((long) field(current, CUPS_SHIFT) + nCups)));
+    }
+
+    /* A count the inventory can hold: between 0 and MAX_STOCK */
+    private static int stock(long amount) {
+        return (int) Math.max(0, Math.min(MAX_STOCK, amount));
+    }
+
+    /* Why an order bigger than the cafe could ever stock is rejected; shared with CafeOrderPipeline */
+    static String tooBig() {
+        return "Cannot order more than " + MAX_STOCK + " of any item in one coffee.";
+    }
+
+    /* Packing helpers */
+    private static long pack(int coffee, int sugar, int cream, int cups) {
+        return ((long) coffee << COFFEE_SHIFT) | ((long) sugar << SUGAR_SHIFT) | ((long) cream << CREAM_SHIFT) | ((long) cups << CUPS_SHIFT);
+    }
+
+    private static int field(long packed, int shift) {
+        return (int) (packed >>> shift) & MAX_STOCK;
     }
 
     /**
@@ -136,5 +294,48 @@ public class Cafe extends Building {
         // Check if restocking works
         myCafe.sellCoffee(600, 5, 3); // This should trigger restocking
         myCafe.showOptions();
+
+        // Several registers selling at once
+        for (int registers = 1; registers <= 8; registers *= 2) {
+            registerBenchmark(registers, 200_000);
+        }
+    }
+
+    /**
+     * Has several registers sell coffee concurrently (restocking whenever they run
+     * short) and prints the combined sales rate.
+     *
+     * @param nRegisters       Number of register threads
+     * @param salesPerRegister Number of coffees each register sells
+     */
+    private static void registerBenchmark(int nRegisters, int salesPerRegister) {
+        Cafe cafe = new Cafe("Benchmark Cafe", "1 Test Way", 1, MAX_STOCK, MAX_STOCK, MAX_STOCK, MAX_STOCK);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService registers = Executors.newFixedThreadPool(nRegisters);
+        for (int r = 0; r < nRegisters; r++) {
+            registers.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < salesPerRegister; i++) {
+                    while (cafe.sell(12, 1, 1) != SaleResult.SOLD) {
+                        cafe.restock(1_000, 100, 100, 100);
+                    }
+                }
+            });
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        registers.shutdown();
+        try {
+            registers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.println(nRegisters + " register(s): " + String.format("%.0f", nRegisters * salesPerRegister / seconds) + " sales/sec");
     }
 }
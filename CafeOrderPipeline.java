@@ -0,0 +1,273 @@
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An order counter for a Cafe. Customers submit orders to a bounded queue and
+ * get a future back; a single barista thread drains the queue and fills the
+ * orders in batches.
+ *
+ * For each batch the barista first tries to take the whole batch's coffee,
+ * sugar, cream and cups from the cafe in one compare-and-set. If the cafe is
+ * short, it falls back to filling the orders one at a time, so the orders
+ * that can still be made are made and only the rest fail. A batch whose
+ * totals are more than the cafe could ever stock is split into runs that
+ * each fit within Cafe.MAX_STOCK.
+ */
+public class CafeOrderPipeline implements AutoCloseable {
+
+    private static final Order STOP = new Order(0, 0, 0); // Tells the barista to finish up
+
+    private Cafe cafe;
+    private ArrayBlockingQueue<Order> queue;
+    private int maxBatch;
+    private Thread barista;
+    private volatile boolean closed;
+
+    /* One customer's order and the future that reports how it went */
+    private static final class Order {
+        final int size;
+        final int nSugarPackets;
+        final int nCreams;
+        final CompletableFuture<Cafe.SaleResult> result = new CompletableFuture<>();
+
+        Order(int size, int nSugarPackets, int nCreams) {
+            this.size = size;
+            this.nSugarPackets = nSugarPackets;
+            this.nCreams = nCreams;
+        }
+    }
+
+    /**
+     * Constructs a pipeline and starts its barista thread.
+     *
+     * @param cafe          the cafe to fill orders from
+     * @param queueCapacity the most orders that can wait at once; submit() blocks when full
+     * @param maxBatch      the most orders the barista fills at once
+     */
+    public CafeOrderPipeline(Cafe cafe, int queueCapacity, int maxBatch) {
+        this.cafe = cafe;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatch = maxBatch;
+        this.barista = new Thread(this::work, "barista-" + cafe.getName());
+        this.barista.setDaemon(true);
+        this.barista.start();
+    }
+
+    /**
+     * Overloaded constructor with a 1,024-order queue and batches of up to 64 orders.
+     *
+     * @param cafe the cafe to fill orders from
+     */
+    public CafeOrderPipeline(Cafe cafe) {
+        this(cafe, 1_024, 64);
+    }
+
+    /**
+     * Places an order, waiting for room in the queue if it is full.
+     *
+     * @param size          The size of the coffee in ounces
+     * @param nSugarPackets The number of sugar packets required
+     * @param nCreams       The number of cream packets required
+     * @return a future that completes with SOLD, or with which item the cafe was short of;
+     *         cancelled if the pipeline is closed before the order is taken
+     * @throws RuntimeException if any amount is negative or more than Cafe.MAX_STOCK
+     */
+    public CompletableFuture<Cafe.SaleResult> submit(int size, int nSugarPackets, int nCreams) {
+        if (size < 0 || nSugarPackets < 0 || nCreams < 0) {
+            throw new RuntimeException("Cannot order a coffee with a negative amount of anything.");
+        }
+        if (size > Cafe.MAX_STOCK || nSugarPackets > Cafe.MAX_STOCK || nCreams > Cafe.MAX_STOCK) {
+            throw new RuntimeException(Cafe.tooBig());
+        }
+        Order order = new Order(size, nSugarPackets, nCreams);
+        try {
+            while (!queue.offer(order, 10, TimeUnit.MILLISECONDS)) { // Wait for room, but not past close()
+                if (closed) {
+                    order.result.cancel(false);
+                    return order.result;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            order.result.cancel(false);
+            return order.result;
+        }
+        if (closed && queue.remove(order)) {
+            order.result.cancel(false); // Queued after the barista's last look at the queue
+        }
+        return order.result;
+    }
+
+    /**
+     * Fills every order already queued, then stops the barista. Orders
+     * placed from then on are cancelled. Closing again does nothing.
+     */
+    @Override
+    public void close() {
+        boolean first;
+        synchronized (this) {
+            first = !closed;
+            closed = true;
+        }
+        try {
+            if (first) {
+                queue.put(STOP);
+            }
+            barista.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        cancelLeftovers();
+    }
+
+    /* Cancels orders still queued once the barista has stopped */
+    private void cancelLeftovers() {
+        ArrayList<Order> leftovers = new ArrayList<>();
+        queue.drainTo(leftovers);
+        for (Order order : leftovers) {
+            order.result.cancel(false);
+        }
+    }
+
+    /* Barista thread: take a batch, fill it, repeat */
+    private void work() {
+        ArrayList<Order> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, maxBatch - 1);
+            boolean stopping = batch.remove(STOP);
+            fill(batch);
+            batch.clear();
+            if (stopping) {
+                ArrayList<Order> rest = new ArrayList<>();
+                queue.drainTo(rest);
+                rest.remove(STOP);
+                fill(rest);
+                return;
+            }
+        }
+    }
+
+    /* Fills the batch in runs whose totals each fit within Cafe.MAX_STOCK */
+    private void fill(ArrayList<Order> batch) {
+        int start = 0;
+        int coffee = 0;
+        int sugar = 0;
+        int cream = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Order order = batch.get(i);
+            // Every order is at most MAX_STOCK of each item, so these sums can't overflow
+            if (coffee + order.size > Cafe.MAX_STOCK || sugar + order.nSugarPackets > Cafe.MAX_STOCK
+                    || cream + order.nCreams > Cafe.MAX_STOCK || i - start == Cafe.MAX_STOCK) {
+                fillRun(batch.subList(start, i), coffee, sugar, cream);
+                start = i;
+                coffee = 0;
+                sugar = 0;
+                cream = 0;
+            }
+            coffee += order.size;
+            sugar += order.nSugarPackets;
+            cream += order.nCreams;
+        }
+        fillRun(batch.subList(start, batch.size()), coffee, sugar, cream);
+    }
+
+    private void fillRun(List<Order> run, int coffee, int sugar, int cream) {
+        if (run.isEmpty()) {
+            return;
+        }
+        if (cafe.take(coffee, sugar, cream, run.size()) == Cafe.SaleResult.SOLD) {
+            for (Order order : run) {
+                order.result.complete(Cafe.SaleResult.SOLD);
+            }
+            return;
+        }
+        for (Order order : run) { // Short of something: fill what we can, one order at a time
+            order.result.complete(cafe.sell(order.size, order.nSugarPackets, order.nCreams));
+        }
+    }
+
+    /**
+     * Simulates a rush: each customer runs on its own thread, places one order
+     * and waits for it. Prints orders per second and the p50/p99 latency from
+     * placing an order to getting it.
+     *
+     * Customers run on virtual threads when the JVM has them (Java 21+);
+     * otherwise on a pool of 512 platform threads.
+     *
+     * @param pipeline   the pipeline to order from
+     * @param nCustomers the number of customers
+     */
+    public static void simulateRush(CafeOrderPipeline pipeline, int nCustomers) {
+        long[] latencies = new long[nCustomers];
+        LongAdder sold = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService customers = customerExecutor();
+        for (int c = 0; c < nCustomers; c++) {
+            int customer = c;
+            customers.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long placed = System.nanoTime();
+                Cafe.SaleResult result = pipeline.submit(4, customer % 3, customer % 2).join();
+                latencies[customer] = System.nanoTime() - placed;
+                if (result == Cafe.SaleResult.SOLD) {
+                    sold.increment();
+                }
+            });
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        customers.shutdown();
+        try {
+            customers.awaitTermination(5, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        Arrays.sort(latencies);
+        System.out.println(nCustomers + " customers, " + sold.sum() + " coffees sold in " + String.format("%.3f", seconds)
+                + "s (" + String.format("%.0f", nCustomers / seconds) + " orders/sec), latency p50 "
+                + String.format("%.3f", latencies[nCustomers / 2] / 1e6) + "ms, p99 "
+                + String.format("%.3f", latencies[(int) (nCustomers * 0.99)] / 1e6) + "ms");
+    }
+
+    /* One virtual thread per customer if available, else a bounded platform-thread pool */
+    private static ExecutorService customerExecutor() {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(512);
+        }
+    }
+
+    /**
+     * Runs a rush-hour simulation against a well-stocked cafe.
+     */
+    public static void main(String[] args) {
+        Cafe cafe = new Cafe("Campus Cafe", "123 Campus Road, Northampton, MA", 1,
+                Cafe.MAX_STOCK, Cafe.MAX_STOCK, Cafe.MAX_STOCK, Cafe.MAX_STOCK);
+        try (CafeOrderPipeline pipeline = new CafeOrderPipeline(cafe)) {
+            simulateRush(pipeline, 15_000);
+        }
+        System.out.println("Cups left: " + cafe.getCups());
+    }
+}
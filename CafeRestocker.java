@@ -0,0 +1,272 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps every Cafe on a CampusMap stocked from a background thread.
+ *
+ * On each tick the restocker measures how much coffee, sugar, cream and how
+ * many cups each cafe used since the last tick and folds that into a smoothed
+ * usage rate. If a cafe holds less of an item than it is expected to use
+ * before the restocker looks again (plus a safety margin), the item is topped
+ * up to cover twice that. Sales never wait on the restocker: it adds stock
+ * with the same compare-and-set the registers use.
+ *
+ * The restocker follows the map as cafes are added and removed, keeping its
+ * own thread-safe set of cafes, so the background thread never reads the
+ * map itself while another thread changes it. It stops following the map
+ * when stopped, so a stopped restocker can be collected along with its
+ * cafes, and catches up with the map when started again.
+ */
+public class CafeRestocker implements CampusMap.Listener {
+
+    private static final double SMOOTHING = 0.3; // Weight of the latest tick in the usage rate
+    private static final int ITEMS = 4;          // Coffee, sugar, cream, cups
+
+    private CampusMap map;
+    private Set<Cafe> cafes;                     // Cafes on the map, updated as it changes
+    private boolean following;                   // Registered as a listener on the map
+    private long periodMillis;
+    private double safetyTicks;                  // How many ticks of usage to keep on hand
+    private HashMap<Cafe, double[]> rates;       // Smoothed usage per tick, by item
+    private HashMap<Cafe, long[]> lastUsed;      // Usage totals seen at the previous tick
+    private ScheduledExecutorService scheduler;
+
+    // Metrics
+    private LongAdder ticks = new LongAdder();
+    private LongAdder restocks = new LongAdder();
+    private LongAdder stockoutsAvoided = new LongAdder(); // Top-ups made when an item would have run out before the next tick
+    private LongAdder failures = new LongAdder();         // Ticks cut short by an exception
+
+    /**
+     * Constructs a restocker that checks every second and keeps three ticks of stock on hand.
+     *
+     * @param map the campus map whose cafes to restock
+     */
+    public CafeRestocker(CampusMap map) {
+        this(map, 1_000, 3.0);
+    }
+
+    /**
+     * Overloaded constructor with a custom schedule.
+     *
+     * @param map          the campus map whose cafes to restock
+     * @param periodMillis how often to check the cafes, in milliseconds
+     * @param safetyTicks  how many ticks of expected usage to keep on hand
+     */
+    public CafeRestocker(CampusMap map, long periodMillis, double safetyTicks) {
+        this.map = map;
+        this.cafes = ConcurrentHashMap.newKeySet();
+        this.periodMillis = periodMillis;
+        this.safetyTicks = safetyTicks;
+        this.rates = new HashMap<>();
+        this.lastUsed = new HashMap<>();
+        follow();
+    }
+
+    /* Loads the map's cafes and listens for changes, unless already doing so */
+    private void follow() {
+        if (!following) {
+            cafes.clear();
+            for (Building b : map.getBuildings()) {
+                buildingAdded(b);
+            }
+            map.addListener(this);
+            following = true;
+        }
+    }
+
+    /* Keeps the set of cafes in step with the map */
+    @Override
+    public void buildingAdded(Building building) {
+        if (building instanceof Cafe) {
+            cafes.add((Cafe) building);
+        }
+    }
+
+    @Override
+    public void buildingRemoved(Building building) {
+        cafes.remove(building);
+    }
+
+    /**
+     * Starts checking the cafes in the background.
+     */
+    public synchronized void start() {
+        follow();
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "cafe-restocker");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleAtFixedRate(this::tick, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the background checks and stops following the map.
+     */
+    public synchronized void stop() {
+        if (following) {
+            map.removeListener(this);
+            following = false;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(periodMillis * 2, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Checks every cafe once: updates its usage rates and tops up anything running low.
+     * Called by the background thread; can also be called directly. An
+     * exception ends the tick early and is counted rather than thrown, since
+     * one thrown from the background thread would cancel every later tick.
+     */
+    public synchronized void tick() {
+        try {
+            rates.keySet().retainAll(cafes); // Forget cafes that have left the map
+            lastUsed.keySet().retainAll(cafes);
+            for (Cafe cafe : cafes) {
+                check(cafe);
+            }
+            ticks.increment();
+        } catch (RuntimeException e) {
+            failures.increment();
+        }
+    }
+
+    private void check(Cafe cafe) {
+        long[] used = {cafe.getCoffeeOuncesUsed(), cafe.getSugarPacketsUsed(), cafe.getCreamsUsed(), cafe.getCupsUsed()};
+        long[] before = lastUsed.put(cafe, used);
+        double[] rate = rates.computeIfAbsent(cafe, c -> new double[ITEMS]);
+        if (before == null) {
+            return; // First sighting: nothing to measure yet
+        }
+        int[] stock = {cafe.getCoffeeOunces(), cafe.getSugarPackets(), cafe.getCreams(), cafe.getCups()};
+        int[] topUp = new int[ITEMS];
+        boolean restocking = false;
+        boolean avoided = false;
+        for (int i = 0; i < ITEMS; i++) {
+            rate[i] = SMOOTHING * (used[i] - before[i]) + (1 - SMOOTHING) * rate[i];
+            double reserve = rate[i] * safetyTicks;
+            if (rate[i] > 0 && stock[i] < reserve) {
+                topUp[i] = (int) Math.min(Cafe.MAX_STOCK, Math.ceil(2 * reserve - stock[i]));
+                restocking = true;
+                if (stock[i] < rate[i]) {
+                    avoided = true; // Would have run dry before the next tick
+                }
+            }
+        }
+        if (restocking) {
+            cafe.restock(topUp[0], topUp[1], topUp[2], topUp[3]);
+            restocks.increment();
+            if (avoided) {
+                stockoutsAvoided.increment();
+            }
+        }
+    }
+
+    /* Metrics */
+    public long getTicks() {
+        return ticks.sum();
+    }
+
+    public long getRestocks() {
+        return restocks.sum();
+    }
+
+    public long getStockoutsAvoided() {
+        return stockoutsAvoided.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Returns the number of failed sales across every cafe on the map.
+     *
+     * @return the total stockouts seen by the registers
+     */
+    public long getStockouts() {
+        long total = 0;
+        for (Cafe cafe : cafes) {
+            total += cafe.getStockouts();
+        }
+        return total;
+    }
+
+    public String toString() {
+        return "CafeRestocker: " + getTicks() + " ticks, " + getRestocks() + " restocks, "
+                + getStockoutsAvoided() + " stockouts avoided, " + getStockouts() + " stockouts at the register"
+                + (getFailures() > 0 ? ", " + getFailures() + " failed ticks" : "");
+    }
+
+    /**
+     * Runs two busy cafes for two seconds with registers that never restock themselves.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        CampusMap map = new CampusMap();
+        ArrayList<Cafe> cafes = new ArrayList<>();
+        cafes.add(new Cafe("Campus Cafe", "123 Campus Road, Northampton, MA", 1, 2_000, 200, 200, 150));
+        cafes.add(new Cafe("Java Cafe", "7 College St, Northampton, MA", 1, 1_000, 100, 100, 80));
+        for (Cafe cafe : cafes) {
+            map.addBuilding(cafe);
+        }
+
+        CafeRestocker restocker = new CafeRestocker(map, 20, 3.0);
+        restocker.start();
+
+        AtomicBoolean open = new AtomicBoolean(true);
+        LongAdder sold = new LongAdder();
+        ArrayList<Thread> registers = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (Cafe cafe : cafes) {
+            for (int r = 0; r < 2; r++) {
+                Thread register = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    while (open.get()) {
+                        if (cafe.sell(12, 1, 1) == Cafe.SaleResult.SOLD) {
+                            sold.increment();
+                        }
+                        try {
+                            Thread.sleep(1); // About a thousand customers a second per register
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                });
+                register.start();
+                registers.add(register);
+            }
+        }
+        start.countDown();
+        Thread.sleep(2_000);
+        open.set(false);
+        for (Thread register : registers) {
+            register.join();
+        }
+        restocker.stop();
+
+        System.out.println("Coffees sold: " + sold.sum());
+        System.out.println(restocker);
+    }
+}
@@ -0,0 +1,451 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Column storage for very large campuses: instead of one object per
+ * building, names, addresses, floor counts and building types are kept in
+ * parallel arrays, one entry per building.
+ *
+ * Names and addresses are dictionary-encoded: each distinct string is stored
+ * once as UTF-8 bytes in a shared byte array, and the name and address columns
+ * hold int codes into it. Floors are an int[] and types a byte[], so scans such
+ * as "buildings with more than 3 floors" walk one small primitive array instead
+ * of chasing a pointer per building.
+ *
+ * Plain Buildings live only in the columns; getBuilding() constructs an
+ * equivalent Building the first time it is asked for and returns that same
+ * object afterwards. Houses, libraries and cafes carry state the columns don't
+ * hold (residents, titles, stock), so they are kept as objects as well as
+ * being described in the columns.
+ *
+ * The store is append-only and meant to be used from one thread at a time.
+ */
+public class CampusColumns {
+
+    public static final byte BUILDING = 0;
+    public static final byte HOUSE = 1;
+    public static final byte LIBRARY = 2;
+    public static final byte CAFE = 3;
+    private static final String[] TYPE_NAMES = {"Building", "House", "Library", "Cafe"};
+
+    private int size;
+    private int[] nameCodes;
+    private int[] addressCodes;
+    private int[] floors;
+    private byte[] types;
+    private StringDictionary names;
+    private StringDictionary addresses;
+    private HashMap<Integer, Building> special;  // Houses, libraries and cafes, by position
+    private Building[] views;                    // Buildings constructed so far, or null if none yet
+
+    /**
+     * Constructs an empty store.
+     */
+    public CampusColumns() {
+        this(1_024);
+    }
+
+    /**
+     * Overloaded constructor that sizes the columns for an expected number of buildings.
+     *
+     * @param expectedBuildings how many buildings will be added
+     */
+    public CampusColumns(int expectedBuildings) {
+        int capacity = Math.max(16, expectedBuildings);
+        this.nameCodes = new int[capacity];
+        this.addressCodes = new int[capacity];
+        this.floors = new int[capacity];
+        this.types = new byte[capacity];
+        this.names = new StringDictionary(capacity);
+        this.addresses = new StringDictionary(capacity);
+        this.special = new HashMap<>();
+    }
+
+    /**
+     * Copies every building on a map into a new store, in map order.
+     *
+     * @param map the campus map
+     * @return the store
+     */
+    public static CampusColumns of(CampusMap map) {
+        CampusColumns columns = new CampusColumns(map.size());
+        for (Building b : map.getBuildings()) {
+            columns.add(b);
+        }
+        return columns;
+    }
+
+    /**
+     * Loads a snapshot into a new store. Plain buildings are read straight
+     * from the snapshot without being constructed.
+     *
+     * @param snapshot the snapshot
+     * @return the store
+     */
+    public static CampusColumns of(CampusSnapshot snapshot) {
+        CampusColumns columns = new CampusColumns(snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (snapshot.getType(i).equals("Building")) {
+                columns.add(snapshot.getName(i), snapshot.getAddress(i), snapshot.getFloors(i));
+            } else {
+                columns.add(snapshot.getBuilding(i));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Adds a plain building without constructing a Building object.
+     *
+     * @param name    the building's name
+     * @param address the building's address
+     * @param nFloors the number of floors
+     * @return the building's position in the store
+     * @throws RuntimeException if the building has fewer than 1 floor
+     */
+    public int add(String name, String address, int nFloors) {
+        if (nFloors < 1) {
+            throw new RuntimeException("Cannot construct a building with fewer than 1 floor.");
+        }
+        return append(name, address, nFloors, BUILDING);
+    }
+
+    /**
+     * Adds a building. A plain Building is broken down into the columns;
+     * houses, libraries and cafes are kept as well.
+     *
+     * @param building the building
+     * @return the building's position in the store
+     */
+    public int add(Building building) {
+        byte type = building instanceof House ? HOUSE : building instanceof Library ? LIBRARY
+                : building instanceof Cafe ? CAFE : BUILDING;
+        int i = append(building.getName(), building.getAddress(), building.getFloors(), type);
+        if (building.getClass() != Building.class) {
+            special.put(i, building);
+        }
+        return i;
+    }
+
+    private int append(String name, String address, int nFloors, byte type) {
+        if (size == floors.length) {
+            int capacity = size * 2;
+            nameCodes = Arrays.copyOf(nameCodes, capacity);
+            addressCodes = Arrays.copyOf(addressCodes, capacity);
+            floors = Arrays.copyOf(floors, capacity);
+            types = Arrays.copyOf(types, capacity);
+            if (views != null) {
+                views = Arrays.copyOf(views, capacity);
+            }
+        }
+        nameCodes[size] = names.encode(name);
+        addressCodes[size] = addresses.encode(address);
+        floors[size] = nFloors;
+        types[size] = type;
+        return size++;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public String getName(int i) {
+        return names.decode(nameCodes[check(i)]);
+    }
+
+    public String getAddress(int i) {
+        return addresses.decode(addressCodes[check(i)]);
+    }
+
+    public int getFloors(int i) {
+        return floors[check(i)];
+    }
+
+    /**
+     * Returns the kind of a building.
+     *
+     * @param i the building's position
+     * @return "Building", "House", "Library" or "Cafe"
+     */
+    public String getType(int i) {
+        return TYPE_NAMES[types[check(i)]];
+    }
+
+    /**
+     * Returns a building, constructing it the first time a plain building is asked for.
+     *
+     * @param i the building's position
+     * @return the building; the same object every time
+     */
+    public Building getBuilding(int i) {
+        check(i);
+        if (types[i] != BUILDING || special.containsKey(i)) {
+            return special.get(i);
+        }
+        if (views == null) {
+            views = new Building[floors.length];
+        }
+        if (views[i] == null) {
+            views[i] = new Building(getName(i), getAddress(i), floors[i]);
+        }
+        return views[i];
+    }
+
+    /**
+     * Puts every building on a new CampusMap, in store order.
+     *
+     * @return the map
+     */
+    public CampusMap toCampusMap() {
+        CampusMap map = new CampusMap();
+        for (int i = 0; i < size; i++) {
+            map.addBuilding(getBuilding(i));
+        }
+        return map;
+    }
+
+    /* Scans */
+
+    /**
+     * Counts the buildings with more than a number of floors.
+     *
+     * @param nFloors the number of floors to beat
+     * @return how many buildings are taller
+     */
+    public int countTallerThan(int nFloors) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (floors[i] > nFloors) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the positions of the buildings with more than a number of floors.
+     *
+     * @param nFloors the number of floors to beat
+     * @return their positions, in order
+     */
+    public int[] tallerThan(int nFloors) {
+        int[] matches = new int[countTallerThan(nFloors)];
+        for (int i = 0, m = 0; i < size; i++) {
+            if (floors[i] > nFloors) {
+                matches[m++] = i;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the positions of every building of a type.
+     *
+     * @param type BUILDING, HOUSE, LIBRARY or CAFE
+     * @return their positions, in order
+     */
+    public int[] ofType(byte type) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count += types[i] == type ? 1 : 0;
+        }
+        int[] matches = new int[count];
+        for (int i = 0, m = 0; i < size; i++) {
+            if (types[i] == type) {
+                matches[m++] = i;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the positions of the buildings with a name, comparing codes rather than strings.
+     *
+     * @param name the name to look for
+     * @return their positions, in order (empty if none)
+     */
+    public List<Integer> findByName(String name) {
+        ArrayList<Integer> matches = new ArrayList<>();
+        int code = names.find(name);
+        if (code == StringDictionary.MISSING) {
+            return matches;
+        }
+        for (int i = 0; i < size; i++) {
+            if (nameCodes[i] == code) {
+                matches.add(i);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Adds up the floors of every building.
+     *
+     * @return the total number of floors on campus
+     */
+    public long totalFloors() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += floors[i];
+        }
+        return total;
+    }
+
+    private int check(int i) {
+        if (i < 0 || i >= size) {
+            throw new RuntimeException("No building #" + i + " in this store of " + size + " buildings.");
+        }
+        return i;
+    }
+
+    /*
+     * Distinct strings stored once each as UTF-8 in one byte array, found
+     * again through an open-addressing table of codes. Null is code -1.
+     */
+    private static final class StringDictionary {
+        static final int MISSING = -2;
+
+        private byte[] bytes = new byte[1 << 12];
+        private int used;
+        private int[] starts;      // Code -> offset of its bytes; starts[code + 1] is where they end
+        private int count;
+        private int[] table;       // Code + 1 in each slot, 0 for empty
+
+        StringDictionary(int expected) {
+            this.starts = new int[Math.max(16, expected) + 1];
+            this.table = new int[Integer.highestOneBit(Math.max(16, expected) * 2 - 1) << 1];
+        }
+
+        int encode(String s) {
+            if (s == null) {
+                return -1;
+            }
+            byte[] key = s.getBytes(StandardCharsets.UTF_8);
+            int slot = slotOf(key);
+            if (table[slot] != 0) {
+                return table[slot] - 1;
+            }
+            if (used + key.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, used + key.length));
+            }
+            System.arraycopy(key, 0, bytes, used, key.length);
+            used += key.length;
+            if (count + 2 > starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            starts[count + 1] = used;
+            table[slot] = ++count;
+            if (count * 2 > table.length) {
+                rehash();
+            }
+            return count - 1;
+        }
+
+        int find(String s) {
+            if (s == null) {
+                return -1;
+            }
+            int code = table[slotOf(s.getBytes(StandardCharsets.UTF_8))];
+            return code == 0 ? MISSING : code - 1;
+        }
+
+        String decode(int code) {
+            return code < 0 ? null : new String(bytes, starts[code], starts[code + 1] - starts[code], StandardCharsets.UTF_8);
+        }
+
+        /* The slot holding this string's code, or the empty slot where it would go */
+        private int slotOf(byte[] key) {
+            int mask = table.length - 1;
+            for (int slot = hash(key, 0, key.length) & mask; ; slot = (slot + 1) & mask) {
+                int code = table[slot] - 1;
+                if (code < 0 || Arrays.equals(bytes, starts[code], starts[code + 1], key, 0, key.length)) {
+                    return slot;
+                }
+            }
+        }
+
+        private void rehash() {
+            int[] bigger = new int[table.length * 2];
+            int mask = bigger.length - 1;
+            for (int code = 0; code < count; code++) {
+                int slot = hash(bytes, starts[code], starts[code + 1]) & mask;
+                while (bigger[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                bigger[slot] = code + 1;
+            }
+            table = bigger;
+        }
+
+        private static int hash(byte[] data, int from, int to) {
+            int h = 1;
+            for (int i = from; i < to; i++) {
+                h = 31 * h + data[i];
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * Compares memory and scan speed for a million buildings held as objects
+     * on a CampusMap and held in columns.
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String[] streets = {"College Lane", "Elm St", "Green St", "Main St", "Paradise Rd", "West St", "Belmont Ave", "Prospect St"};
+        EventSink previousSink = Events.getSink();
+        Events.setSink(Events.SILENT);
+
+        long before = usedMemory();
+        CampusMap map = new CampusMap();
+        for (int i = 0; i < n; i++) {
+            map.addBuilding(new Building("Hall " + i, (i % 500) + " " + streets[i % streets.length] + ", Northampton, MA", 1 + i % 6));
+        }
+        long mapBytes = usedMemory() - before;
+
+        before = usedMemory();
+        CampusColumns columns = new CampusColumns(n);
+        for (int i = 0; i < n; i++) {
+            columns.add("Hall " + i, (i % 500) + " " + streets[i % streets.length] + ", Northampton, MA", 1 + i % 6);
+        }
+        long columnBytes = usedMemory() - before;
+        System.out.println(String.format("%,d buildings: CampusMap about %,d MB, columns about %,d MB (%.1fx smaller)",
+                n, mapBytes >> 20, columnBytes >> 20, (double) mapBytes / columnBytes));
+
+        List<Building> objects = map.getBuildings();
+        int objectCount = 0;
+        int columnCount = 0;
+        long objectNanos = Long.MAX_VALUE;
+        long columnNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 10; round++) { // Best of ten, after the JIT has warmed up
+            long start = System.nanoTime();
+            objectCount = 0;
+            for (Building b : objects) {
+                if (b.getFloors() > 3) {
+                    objectCount++;
+                }
+            }
+            objectNanos = Math.min(objectNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            columnCount = columns.countTallerThan(3);
+            columnNanos = Math.min(columnNanos, System.nanoTime() - start);
+        }
+        System.out.println(String.format("Buildings taller than 3 floors: %,d by objects in %.2f ms, %,d by columns in %.2f ms",
+                objectCount, objectNanos / 1e6, columnCount, columnNanos / 1e6));
+        int i = columns.findByName("Hall 4242").get(0);
+        Building view = columns.getBuilding(i);
+        System.out.println("Materialized #" + i + ": " + view + " (same object again? " + (view == columns.getBuilding(i)) + ")");
+        Events.setSink(previousSink);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
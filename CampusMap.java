@@ -1,58 +1,387 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Represents a map of buildings on the campus.
  * Provides functionality to add and remove buildings, and to display the map of buildings.
+ *
+ * The directory can be streamed to a Writer or OutputStream, a page at a time
+ * or with a cursor, without ever building it as one string. Directories of up
+ * to 50,000 buildings are also kept rendered: adding a building appends its
+ * row to the cached text, and removing one drops the cache until it is next
+ * needed, so showing the same directory again costs almost nothing. Bigger
+ * directories are only ever streamed; toString() just summarizes them.
  */
 public class CampusMap {
 
-    private ArrayList<Building> buildings;
+    private LinkedHashSet<Building> buildings;                   // Keeps insertion order for the directory
+    private HashMap<String, ArrayList<Building>> byName;         // Exact-name index
+    private HashMap<String, ArrayList<Building>> byAddress;      // Exact-address index
+    private TreeMap<String, ArrayList<Building>> byNamePrefix;   // Lower-cased names, sorted for prefix search
+    private ArrayList<Listener> listeners;                       // Told when buildings come and go
+
+    private static final String DIRECTORY_HEADER = "DIRECTORY of BUILDINGS";
+    private static final int DIRECTORY_CACHE_ROWS = 50_000;     // Bigger directories are streamed, never cached
+    private StringBuilder directory;                             // Rendered directory, or null if not cached
+    private int[] rowStarts;                                     // Where each row starts in directory (at its "\n")
+    private String directoryString;                              // directory as a String, until the next change
+    private ArrayList<Building> rows;                            // Buildings in directory order, for paging big maps; null until needed
+
+    /* Something that keeps data derived from the map, such as CampusRoutes */
+    interface Listener {
+        void buildingAdded(Building building);
+        void buildingRemoved(Building building);
+    }
 
     /**
-     * Default constructor, initializes an empty ArrayList to hold buildings.
+     * Default constructor, initializes empty collections to hold and index buildings.
      */
     public CampusMap() {
-        buildings = new ArrayList<Building>();
+        buildings = new LinkedHashSet<Building>();
+        byName = new HashMap<>();
+        byAddress = new HashMap<>();
+        byNamePrefix = new TreeMap<>();
+        listeners = new ArrayList<>();
     }
 
     /**
-     * Adds a Building to the map.
+     * Adds a Building to the map. Adding a building already on the map does nothing.
      * 
      * @param building the Building to add
      */
     public void addBuilding(Building building) {
-        System.out.println("Adding building...");
-        buildings.add(building);
-        System.out.println("-->Successfully added " + building.getName() + " to the map.");
+        if (buildings.add(building)) {
+            index(building);
+            appendToDirectory(building);
+            if (rows != null) {
+                rows.add(building);
+            }
+            for (Listener listener : listeners) {
+                listener.buildingAdded(building);
+            }
+            Events.emit(EventType.BUILDING_ADDED, building, building.getName());
+        }
     }
 
     /**
-     * Removes a Building from the map.
+     * Removes a Building from the map. Removing a building not on the map does nothing.
      * 
      * @param building the Building to remove
      * @return the removed Building
      */
     public Building removeBuilding(Building building) {
-        System.out.println("Removing building...");
-        buildings.remove(building);
-        System.out.println("-->Successfully removed " + building.getName() + " from the map.");
+        if (buildings.remove(building)) {
+            unindex(building);
+            directory = null; // Every row after it is renumbered
+            directoryString = null;
+            rows = null;
+            for (Listener listener : listeners) {
+                listener.buildingRemoved(building);
+            }
+            Events.emit(EventType.BUILDING_REMOVED, building, building.getName());
+        }
         return building;
     }
 
+    /**
+     * Returns the buildings with exactly the given name.
+     *
+     * @param name the name to look up
+     * @return the matching buildings, in the order they were added (empty if none)
+     */
+    public List<Building> findByName(String name) {
+        return copyOf(byName.get(name));
+    }
+
+    /**
+     * Returns the buildings located at exactly the given address.
+     *
+     * @param address the address to look up
+     * @return the matching buildings, in the order they were added (empty if none)
+     */
+    public List<Building> findByAddress(String address) {
+        return copyOf(byAddress.get(address));
+    }
+
+    /**
+     * Type-ahead search: returns every building whose name starts with the given prefix.
+     * Matching ignores case, and results come back sorted by name.
+     *
+     * @param prefix the start of a building name, e.g. "Ne"
+     * @return the matching buildings (empty if none)
+     */
+    public List<Building> searchByPrefix(String prefix) {
+        ArrayList<Building> matches = new ArrayList<>();
+        String key = prefix.toLowerCase(Locale.ROOT);
+        for (ArrayList<Building> bucket : byNamePrefix.subMap(key, key + Character.MAX_VALUE).values()) {
+            matches.addAll(bucket);
+        }
+        return matches;
+    }
+
+    /**
+     * Returns every building on the map, in the order they were added.
+     *
+     * @return a copy of the list of buildings
+     */
+    public List<Building> getBuildings() {
+        return new ArrayList<>(buildings);
+    }
+
+    /**
+     * Returns the number of buildings on the map.
+     *
+     * @return the number of buildings
+     */
+    public int size() {
+        return buildings.size();
+    }
+
+    /* Registers something to be told when buildings are added or removed */
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /* Adds a building to every index */
+    private void index(Building building) {
+        byName.computeIfAbsent(building.getName(), k -> new ArrayList<>()).add(building);
+        byAddress.computeIfAbsent(building.getAddress(), k -> new ArrayList<>()).add(building);
+        if (building.getName() != null) {
+            byNamePrefix.computeIfAbsent(building.getName().toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(building);
+        }
+    }
+
+    /* Removes a building from every index, dropping buckets that become empty */
+    private void unindex(Building building) {
+        removeFrom(byName, building.getName(), building);
+        removeFrom(byAddress, building.getAddress(), building);
+        if (building.getName() != null) {
+            removeFrom(byNamePrefix, building.getName().toLowerCase(Locale.ROOT), building);
+        }
+    }
+
+    private static void removeFrom(Map<String, ArrayList<Building>> index, String key, Building building) {
+        ArrayList<Building> bucket = index.get(key);
+        if (bucket != null) {
+            bucket.remove(building); // Buckets only hold buildings sharing one key, so this stays short
+            if (bucket.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static List<Building> copyOf(ArrayList<Building> bucket) {
+        return bucket == null ? new ArrayList<Building>() : new ArrayList<Building>(bucket);
+    }
+
     /**
      * Returns a string representation of all the buildings in the campus map.
+     * Directories too big to cache aren't built as one string; they are
+     * summarized instead, and writeDirectory() lists them.
      * 
      * @return a string listing all buildings and their addresses
      */
     @Override
     public String toString() {
-        StringBuilder mapString = new StringBuilder("DIRECTORY of BUILDINGS");
+        if (directoryString == null) {
+            StringBuilder rendered = cachedDirectory();
+            if (rendered == null) {
+                return DIRECTORY_HEADER + "\n  (" + buildings.size()
+                        + " buildings; too many to list here, use writeDirectory() or directoryCursor())";
+            }
+            directoryString = rendered.toString();
+        }
+        return directoryString;
+    }
+
+    /**
+     * Writes the directory (the same text as toString()) to a Writer, row by
+     * row for directories too big to cache.
+     *
+     * @param out where to write the directory
+     * @throws UncheckedIOException if writing fails
+     */
+    public void writeDirectory(Writer out) {
+        try {
+            StringBuilder rendered = cachedDirectory();
+            if (rendered != null) {
+                out.append(rendered);
+                return;
+            }
+            out.write(DIRECTORY_HEADER);
+            StringBuilder row = new StringBuilder();
+            int i = 0;
+            for (Building b : this.buildings) {
+                row.setLength(0);
+                appendRow(row, ++i, b);
+                out.append(row);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the campus directory.", e);
+        }
+    }
+
+    /**
+     * Writes the directory to an OutputStream as UTF-8. The stream is flushed but not closed.
+     *
+     * @param out where to write the directory
+     * @throws UncheckedIOException if writing fails
+     */
+    public void writeDirectory(OutputStream out) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writeDirectory(writer);
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the campus directory.", e);
+        }
+    }
+
+    /**
+     * Writes one page of directory rows, each as "  n. name (address)" on its own line.
+     * Pages of a cached directory are copied straight from the cache; pages of
+     * a bigger one are rendered from a list of the buildings in directory
+     * order, so any page costs the same as the first.
+     *
+     * @param out      where to write the rows
+     * @param page     the page number, starting at 0
+     * @param pageSize the number of rows per page
+     * @return the number of rows written (0 past the last page)
+     * @throws UncheckedIOException if writing fails
+     */
+    public int writeDirectoryPage(Writer out, int page, int pageSize) {
+        if (page < 0 || pageSize < 1) {
+            throw new RuntimeException("Invalid directory page " + page + " of size " + pageSize + ".");
+        }
+        long first = (long) page * pageSize;
+        if (first >= buildings.size()) {
+            return 0;
+        }
+        int from = (int) first;
+        int to = (int) Math.min(buildings.size(), first + pageSize);
+        StringBuilder rendered = cachedDirectory();
+        try {
+            if (rendered != null) {
+                int end = to < buildings.size() ? rowStarts[to] : rendered.length();
+                out.append(rendered, rowStarts[from] + 1, end).append('\n');
+                return to - from;
+            }
+            if (rows == null) {
+                rows = new ArrayList<>(buildings); // Kept until a building is removed
+            }
+            StringBuilder line = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                line.setLength(0);
+                appendRow(line, i + 1, rows.get(i));
+                out.append(line, 1, line.length()).append('\n');
+            }
+            return to - from;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the campus directory.", e);
+        }
+    }
+
+    /**
+     * Returns a cursor over the directory rows, starting with the first building.
+     *
+     * @return a cursor positioned before the first row
+     */
+    public DirectoryCursor directoryCursor() {
+        return new DirectoryCursor(buildings.iterator());
+    }
+
+    /**
+     * Walks the directory a batch of rows at a time, in the same format as
+     * writeDirectoryPage(). Like any iterator over the map, a cursor fails if
+     * the map changes while it is in use.
+     */
+    public static class DirectoryCursor {
+        private Iterator<Building> buildings;
+        private int row;                      // Rows passed so far
+        private StringBuilder line = new StringBuilder();
+
+        private DirectoryCursor(Iterator<Building> buildings) {
+            this.buildings = buildings;
+        }
+
+        public boolean hasNext() {
+            return buildings.hasNext();
+        }
+
+        /**
+         * Writes up to the given number of rows and moves past them.
+         *
+         * @param out  where to write the rows
+         * @param rows the most rows to write
+         * @return the number of rows written
+         * @throws IOException if writing fails
+         */
+        public int writeNext(Writer out, int rows) throws IOException {
+            int written = 0;
+            while (written < rows && buildings.hasNext()) {
+                line.setLength(0);
+                appendRow(line, ++row, buildings.next());
+                out.append(line, 1, line.length()).append('\n');
+                written++;
+            }
+            return written;
+        }
+    }
 
-        for (int i = 0; i < this.buildings.size(); i++) {
-            mapString.append("\n  ").append(i + 1).append(". ").append(this.buildings.get(i).getName())
-                     .append(" (").append(this.buildings.get(i).getAddress()).append(")");
+    /* The rendered directory, building the cache first if it is small enough; null if it is too big */
+    private StringBuilder cachedDirectory() {
+        if (directory == null && buildings.size() <= DIRECTORY_CACHE_ROWS) {
+            directory = new StringBuilder(DIRECTORY_HEADER);
+            rowStarts = new int[Math.max(16, buildings.size())];
+            int i = 0;
+            for (Building b : this.buildings) {
+                rowStarts[i] = directory.length();
+                appendRow(directory, ++i, b);
+            }
         }
-        return mapString.toString();
+        return directory;
+    }
+
+    /* Adds a new last building to the cached directory, or drops the cache once it gets too big */
+    private void appendToDirectory(Building building) {
+        directoryString = null;
+        if (directory == null) {
+            return;
+        }
+        int i = buildings.size() - 1;
+        if (i >= DIRECTORY_CACHE_ROWS) {
+            directory = null;
+            return;
+        }
+        if (i == rowStarts.length) {
+            rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+        }
+        rowStarts[i] = directory.length();
+        appendRow(directory, i + 1, building);
+    }
+
+    private static void appendRow(StringBuilder out, int number, Building b) {
+        out.append("\n  ").append(number).append(". ").append(b.getName())
+           .append(" (").append(b.getAddress()).append(")");
     }
 
     /**
@@ -107,11 +436,24 @@ public class CampusMap {
         // Print all buildings in the campus map
         System.out.println(campusMap);
 
+        // Look buildings up through the indexes
+        System.out.println("Buildings named Neilson Library: " + campusMap.findByName("Neilson Library").size());
+        System.out.println("Buildings at 200 Seelye Ave: " + campusMap.findByAddress("200 Seelye Ave, Northampton, MA").size());
+        for (Building b : campusMap.searchByPrefix("Ne")) {
+            System.out.println("Type-ahead \"Ne\" -> " + b.getName());
+        }
+
         // Remove a building from the map
         campusMap.removeBuilding(house2);
 
         // Print the updated map after removal
         System.out.println("\nAfter removing a building:");
         System.out.println(campusMap);
+
+        // Page through the directory instead of printing it all at once
+        PrintWriter out = new PrintWriter(System.out);
+        out.println("\nSecond page of the directory (5 per page):");
+        campusMap.writeDirectoryPage(out, 1, 5);
+        out.flush();
     }
 }
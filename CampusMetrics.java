@@ -0,0 +1,122 @@
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adds up the metrics of every instrumented building on a CampusMap.
+ * Registered with JMX under "campus:type=CampusMetrics".
+ *
+ * JMX reads the metrics from its own threads, while CampusMap isn't safe to
+ * read during changes, so the buildings are kept in a concurrent set that
+ * follows the map's changes as they happen.
+ */
+public class CampusMetrics implements CampusMetricsMXBean, CampusMap.Listener {
+
+    private final CampusMap map;
+    private final Set<Building> buildings;  // The map's buildings
+    private String objectName;              // Name registered with JMX, or null
+
+    /**
+     * Constructs metrics for a map.
+     *
+     * @param map the campus map
+     */
+    public CampusMetrics(CampusMap map) {
+        this.map = map;
+        this.buildings = ConcurrentHashMap.newKeySet();
+        buildings.addAll(map.getBuildings());
+        map.addListener(this);
+    }
+
+    /**
+     * Creates metrics for a map and registers them with the platform MBean server.
+     *
+     * @param map the campus map
+     * @return the registered metrics
+     */
+    public static CampusMetrics register(CampusMap map) {
+        CampusMetrics campus = new CampusMetrics(map);
+        campus.objectName = "campus:type=CampusMetrics,id=" + System.identityHashCode(map);
+        Instrumentation.register(campus, campus.objectName);
+        return campus;
+    }
+
+    /**
+     * Stops following the map and removes these metrics from JMX, so neither
+     * keeps the other alive. The buildings' own metrics stay registered (see
+     * Instrumentation.unregister).
+     */
+    public void unregister() {
+        map.removeListener(this);
+        buildings.clear();
+        if (objectName != null) {
+            Instrumentation.unregister(objectName);
+            objectName = null;
+        }
+    }
+
+    @Override
+    public void buildingAdded(Building building) {
+        buildings.add(building);
+    }
+
+    @Override
+    public void buildingRemoved(Building building) {
+        buildings.remove(building);
+    }
+
+    public int getInstrumentedBuildings() {
+        int count = 0;
+        for (Building b : buildings) {
+            if (Instrumentation.existingMetricsFor(b) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public long getTotalCalls() {
+        long total = 0;
+        for (Building b : buildings) {
+            BuildingMetrics stats = Instrumentation.existingMetricsFor(b);
+            if (stats != null) {
+                total += stats.getTotalCalls();
+            }
+        }
+        return total;
+    }
+
+    public long getTotalErrors() {
+        long total = 0;
+        for (Building b : buildings) {
+            BuildingMetrics stats = Instrumentation.existingMetricsFor(b);
+            if (stats != null) {
+                total += stats.getTotalErrors();
+            }
+        }
+        return total;
+    }
+
+    public Map<String, Long> getCallCountsByOperation() {
+        TreeMap<String, Long> counts = new TreeMap<>();
+        for (Building b : buildings) {
+            BuildingMetrics stats = Instrumentation.existingMetricsFor(b);
+            if (stats != null) {
+                stats.getCallCounts().forEach((operation, calls) -> counts.merge(operation, calls, Long::sum));
+            }
+        }
+        return counts;
+    }
+
+    public Map<String, Long> getCallCountsByBuilding() {
+        TreeMap<String, Long> counts = new TreeMap<>();
+        for (Building b : buildings) {
+            BuildingMetrics stats = Instrumentation.existingMetricsFor(b);
+            if (stats != null) {
+                counts.merge(String.valueOf(b.getName()), stats.getTotalCalls(), Long::sum);
+            }
+        }
+        return counts;
+    }
+}
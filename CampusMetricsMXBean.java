@@ -0,0 +1,12 @@
+import java.util.Map;
+
+/**
+ * What JMX shows for a whole CampusMap: the instrumented buildings on it, added up.
+ */
+public interface CampusMetricsMXBean {
+    int getInstrumentedBuildings();
+    long getTotalCalls();
+    long getTotalErrors();
+    Map<String, Long> getCallCountsByOperation();
+    Map<String, Long> getCallCountsByBuilding();
+}
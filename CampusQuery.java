@@ -0,0 +1,356 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Typed queries over the buildings of a CampusMap, such as "Houses with a
+ * dining room and an elevator", "buildings taller than 3 floors" or "Cafes
+ * low on cups", without scanning the map and checking each building's type.
+ *
+ * Each building gets a position, in the order it was added to the map, and
+ * the secondary indexes are bitmaps over those positions: one per building
+ * class, one per floor count and one per feature. A query ANDs together the
+ * bitmaps for its type, floor range and features, then checks any other
+ * conditions (where()) against just those candidates; when that leaves many
+ * buildings to check, they are checked in parallel on the common fork/join
+ * pool (on a single-core machine they are checked on the calling thread,
+ * where splitting the work would only add overhead). Results always come
+ * back in map order.
+ *
+ * The indexes follow the map as buildings are added and removed, until the
+ * query is closed. Like CampusMap, a CampusQuery is meant to be used from one
+ * thread at a time.
+ */
+public class CampusQuery implements CampusMap.Listener, AutoCloseable {
+
+    private static final int PARALLEL_THRESHOLD = 8_192; // Fewer candidates than this are checked on the calling thread
+
+    /**
+     * Fixed features of a building that queries can look up through an index.
+     */
+    public enum Feature {
+        ELEVATOR,
+        DINING_ROOM;
+
+        boolean of(Building b) {
+            return this == ELEVATOR ? b.hasElevator() : b instanceof House && ((House) b).hasDiningRoom();
+        }
+    }
+
+    private CampusMap map;
+    private Building[] buildings;                          // Position -> building, null once removed
+    private int end;                                       // Positions below this have been handed out
+    private int removed;                                   // Positions below end whose building is gone
+    private HashMap<Building, Integer> positions;          // Building -> position
+    private HashMap<Class<?>, BitSet> byClass;             // Exact class -> positions
+    private TreeMap<Integer, BitSet> byFloors;             // Number of floors -> positions
+    private EnumMap<Feature, BitSet> byFeature;            // Feature -> positions of buildings that have it
+
+    /**
+     * Indexes every building on a map, and keeps following the map as
+     * buildings are added or removed.
+     *
+     * @param map the campus map
+     */
+    public CampusQuery(CampusMap map) {
+        this.map = map;
+        this.buildings = new Building[Math.max(16, map.size())];
+        this.positions = new HashMap<>();
+        this.byClass = new HashMap<>();
+        this.byFloors = new TreeMap<>();
+        this.byFeature = new EnumMap<>(Feature.class);
+        for (Feature feature : Feature.values()) {
+            byFeature.put(feature, new BitSet());
+        }
+        for (Building b : map.getBuildings()) {
+            buildingAdded(b);
+        }
+        map.addListener(this);
+    }
+
+    /**
+     * Stops following the map, so the map no longer keeps these indexes
+     * alive. Queries made afterwards see the map as it was when closed.
+     * Closing again does nothing.
+     */
+    @Override
+    public void close() {
+        map.removeListener(this);
+    }
+
+    /**
+     * Starts a query for buildings of a type, including its subclasses.
+     *
+     * @param type Building.class for every building, or House.class, Library.class, Cafe.class...
+     * @return a query matching every building of that type; narrow it down with its methods
+     */
+    public <T extends Building> Query<T> select(Class<T> type) {
+        return new Query<>(type);
+    }
+
+    /**
+     * A query under construction. Each method narrows it down and returns the
+     * same query, so conditions can be chained; list() and count() run it.
+     */
+    public final class Query<T extends Building> {
+        private final Class<T> type;
+        private int minFloors = 1;
+        private int maxFloors = Integer.MAX_VALUE;
+        private EnumSet<Feature> features = EnumSet.noneOf(Feature.class);
+        private ArrayList<Predicate<? super T>> conditions = new ArrayList<>();
+
+        private Query(Class<T> type) {
+            this.type = type;
+        }
+
+        /**
+         * Keeps buildings with a number of floors in a range (indexed).
+         *
+         * @param min the fewest floors
+         * @param max the most floors
+         * @return this query
+         */
+        public Query<T> withFloors(int min, int max) {
+            minFloors = Math.max(minFloors, min);
+            maxFloors = Math.min(maxFloors, max);
+            return this;
+        }
+
+        /**
+         * Keeps buildings with more than a number of floors (indexed).
+         *
+         * @param nFloors the number of floors to beat
+         * @return this query
+         */
+        public Query<T> tallerThan(int nFloors) {
+            return withFloors(nFloors + 1, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Keeps buildings with a feature (indexed).
+         *
+         * @param feature the feature, e.g. Feature.DINING_ROOM
+         * @return this query
+         */
+        public Query<T> with(Feature feature) {
+            features.add(feature);
+            return this;
+        }
+
+        /**
+         * Keeps buildings meeting any other condition, such as a library holding
+         * a title. Conditions aren't indexed: they are checked against every
+         * building the indexed parts of the query leave, in parallel when there
+         * are many of those, so they must be safe to call from several threads.
+         *
+         * @param condition the condition, e.g. {@code library -> library.containsTitle("Beloved")}
+         * @return this query
+         */
+        public Query<T> where(Predicate<? super T> condition) {
+            conditions.add(condition);
+            return this;
+        }
+
+        /**
+         * Runs the query.
+         *
+         * @return the matching buildings, in map order
+         */
+        public List<T> list() {
+            BitSet candidates = candidates();
+            if (conditions.isEmpty()) {
+                ArrayList<T> matches = new ArrayList<>(candidates.cardinality());
+                candidates.stream().forEach(i -> matches.add(type.cast(buildings[i])));
+                return matches;
+            }
+            return stream(candidates).filter(this::meetsConditions).mapToObj(i -> type.cast(buildings[i]))
+                    .collect(Collectors.toList());
+        }
+
+        /**
+         * Counts the matching buildings without listing them.
+         *
+         * @return the number of matching buildings
+         */
+        public int count() {
+            BitSet candidates = candidates();
+            if (conditions.isEmpty()) {
+                return candidates.cardinality();
+            }
+            return (int) stream(candidates).filter(this::meetsConditions).count();
+        }
+
+        /* Positions meeting the type, floor and feature parts of the query */
+        private BitSet candidates() {
+            BitSet result = new BitSet(end);
+            for (Map.Entry<Class<?>, BitSet> entry : byClass.entrySet()) {
+                if (type.isAssignableFrom(entry.getKey())) {
+                    result.or(entry.getValue());
+                }
+            }
+            if (minFloors > 1 || maxFloors < Integer.MAX_VALUE) {
+                BitSet floors = new BitSet(end);
+                if (minFloors <= maxFloors) {
+                    for (BitSet bucket : byFloors.subMap(minFloors, true, maxFloors, true).values()) {
+                        floors.or(bucket);
+                    }
+                }
+                result.and(floors);
+            }
+            for (Feature feature : features) {
+                result.and(byFeature.get(feature));
+            }
+            return result;
+        }
+
+        private IntStream stream(BitSet candidates) {
+            IntStream positions = candidates.stream();
+            boolean parallel = ForkJoinPool.getCommonPoolParallelism() > 1 && candidates.cardinality() >= PARALLEL_THRESHOLD;
+            return parallel ? positions.parallel() : positions;
+        }
+
+        private boolean meetsConditions(int position) {
+            T building = type.cast(buildings[position]);
+            for (Predicate<? super T> condition : conditions) {
+                if (!condition.test(building)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /* Keeps the indexes in step with the map */
+    @Override
+    public void buildingAdded(Building building) {
+        if (positions.containsKey(building)) {
+            return;
+        }
+        if (end == buildings.length) {
+            if (removed * 2 > end) {
+                compact();
+            } else {
+                buildings = Arrays.copyOf(buildings, end * 2);
+            }
+        }
+        int position = end++;
+        buildings[position] = building;
+        positions.put(building, position);
+        index(building, position);
+    }
+
+    @Override
+    public void buildingRemoved(Building building) {
+        Integer position = positions.remove(building);
+        if (position == null) {
+            return;
+        }
+        buildings[position] = null;
+        byClass.get(building.getClass()).clear(position);
+        byFloors.get(building.getFloors()).clear(position);
+        for (BitSet bucket : byFeature.values()) {
+            bucket.clear(position);
+        }
+        removed++;
+    }
+
+    private void index(Building building, int position) {
+        byClass.computeIfAbsent(building.getClass(), k -> new BitSet()).set(position);
+        byFloors.computeIfAbsent(building.getFloors(), k -> new BitSet()).set(position);
+        for (Feature feature : Feature.values()) {
+            if (feature.of(building)) {
+                byFeature.get(feature).set(position);
+            }
+        }
+    }
+
+    /* Renumbers the buildings still on the map so removed positions can be reused, keeping map order */
+    private void compact() {
+        Building[] old = buildings;
+        int oldEnd = end;
+        buildings = new Building[Math.max(16, (oldEnd - removed) * 2)];
+        end = 0;
+        removed = 0;
+        positions.clear();
+        byClass.clear();
+        byFloors.clear();
+        for (BitSet bucket : byFeature.values()) {
+            bucket.clear();
+        }
+        for (int i = 0; i < oldEnd; i++) {
+            if (old[i] != null) {
+                buildingAdded(old[i]);
+            }
+        }
+    }
+
+    /**
+     * Builds a campus of a million buildings and times a few queries:
+     * indexed ones, and ones that have to check a condition on every building.
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        EventSink previousSink = Events.getSink();
+        Events.setSink(Events.SILENT);
+        CampusMap map = new CampusMap();
+        for (int i = 0; i < n; i++) {
+            String address = i + " College Lane, Northampton, MA";
+            switch (i % 100) {
+                case 0:
+                    map.addBuilding(new House("House " + i, address, 2 + i % 4, i % 300 == 0, i % 700 == 0));
+                    break;
+                case 1:
+                    Library library = new Library("Library " + i, address, 3);
+                    library.addTitle(i % 2_000 == 1 ? "Beloved" : "Middlemarch");
+                    map.addBuilding(library);
+                    break;
+                case 2:
+                    map.addBuilding(new Cafe("Cafe " + i, address, 1, 500, 100, 100, i % 50));
+                    break;
+                default:
+                    map.addBuilding(new Building("Hall " + i, address, 1 + i % 6));
+            }
+        }
+        CampusQuery query = new CampusQuery(map);
+        map.removeBuilding(map.findByName("House 0").get(0));
+
+        time("Houses with a dining room and an elevator",
+                () -> query.select(House.class).with(Feature.DINING_ROOM).with(Feature.ELEVATOR).count());
+        time("Buildings taller than 3 floors",
+                () -> query.select(Building.class).tallerThan(3).count());
+        time("Libraries holding \"Beloved\"",
+                () -> query.select(Library.class).where(library -> library.containsTitle("Beloved")).count());
+        time("Cafes low on cups",
+                () -> query.select(Cafe.class).where(cafe -> cafe.getCups() < 10).count());
+        time("Buildings whose name ends in 7 (scan)",
+                () -> query.select(Building.class).where(b -> b.getName().endsWith("7")).count());
+        System.out.println("First Libraries holding \"Beloved\": " + query.select(Library.class)
+                .where(library -> library.containsTitle("Beloved")).list().subList(0, 3).stream()
+                .map(Building::getName).collect(Collectors.toList()));
+        query.close();
+        Events.setSink(previousSink);
+    }
+
+    /* Prints a query's result and its best time over ten runs, after the JIT has warmed up */
+    private static void time(String label, IntSupplier query) {
+        int count = 0;
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 10; run++) {
+            long start = System.nanoTime();
+            count = query.getAsInt();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format("%-42s %,8d in %6.2f ms", label + ":", count, best / 1e6));
+    }
+}
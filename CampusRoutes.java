@@ -0,0 +1,644 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Walkways between the buildings of a CampusMap, and shortest routes over them.
+ *
+ * Walkways are two-way and measured in meters. Buildings can be given a
+ * location on a campus grid (also in meters); once every building has one,
+ * route searches use A* with the straight-line distance as a guide, otherwise
+ * plain Dijkstra.
+ *
+ * precompute() builds a table of the distance between every pair of buildings,
+ * one Dijkstra search per building run in parallel, after which distance() is
+ * a table lookup and route() just follows the table. The table is kept up to
+ * date as the map changes: a new walkway can only make routes shorter, so it
+ * is folded into the table directly; removing a walkway or a building only
+ * marks the rows whose shortest routes used it, and those rows are searched
+ * again the next time they are needed (or all at once by refresh()).
+ *
+ * Like CampusMap, a CampusRoutes is meant to be used from one thread at a time.
+ */
+public class CampusRoutes implements CampusMap.Listener {
+
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
+    private static final double TOLERANCE = 1e-9; // Relative slack when comparing sums of walkway lengths
+
+    private HashMap<Building, Integer> ids;   // Building -> node id
+    private Building[] nodes;                 // Node id -> building, null for unused ids
+    private ArrayDeque<Integer> freeIds;      // Ids of removed buildings, reused first
+    private int nextId;                       // Ids below this have been handed out
+    private int live;                         // Number of buildings
+
+    private int[][] neighbors;                // Walkways from each node
+    private double[][] lengths;                // Their lengths, matching neighbors
+    private int[] degree;
+
+    private double[] xs;                      // Locations, for the A* guide
+    private double[] ys;
+    private boolean[] located;
+    private int nLocated;
+
+    private double[][] table;                 // All-pairs distances, or null before precompute()
+    private boolean[] stale;                  // Rows that must be searched again before use
+
+    // Scratch space for A* searches, reset by bumping the epoch
+    private double[] searchCost;
+    private int[] searchPrev;
+    private int[] searchSeen;
+    private int[] searchDone;
+    private int epoch;
+    private Frontier frontier = new Frontier();
+
+    /* A binary min-heap of (cost, node) pairs; entries that are out of date are skipped when popped */
+    private static final class Frontier {
+        double[] keys = new double[64];
+        int[] nodes = new int[64];
+        int size;
+
+        void push(double key, int node) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            int i = size++;
+            while (i > 0 && keys[(i - 1) >>> 1] > key) {
+                keys[i] = keys[(i - 1) >>> 1];
+                nodes[i] = nodes[(i - 1) >>> 1];
+                i = (i - 1) >>> 1;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+        }
+
+        /* Removes the cheapest entry, leaving its cost in keys[size] and its node in nodes[size] */
+        void pop() {
+            double topKey = keys[0];
+            int topNode = nodes[0];
+            double key = keys[--size];
+            int node = nodes[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[i] = keys[child];
+                nodes[i] = nodes[child];
+                i = child;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+            keys[size] = topKey;
+            nodes[size] = topNode;
+        }
+    }
+
+    /**
+     * Constructs a routing engine over a map's buildings, with no walkways yet.
+     * It follows the map from then on: buildings added to or removed from the
+     * map are added to or removed from the routes.
+     *
+     * @param map the campus map
+     */
+    public CampusRoutes(CampusMap map) {
+        this.ids = new HashMap<>();
+        this.freeIds = new ArrayDeque<>();
+        this.nodes = new Building[16];
+        this.neighbors = new int[16][];
+        this.lengths = new double[16][];
+        this.degree = new int[16];
+        this.xs = new double[16];
+        this.ys = new double[16];
+        this.located = new boolean[16];
+        for (Building b : map.getBuildings()) {
+            buildingAdded(b);
+        }
+        map.addListener(this);
+    }
+
+    /**
+     * Places a building on the campus grid.
+     *
+     * @param building the building
+     * @param x        meters east of the campus origin
+     * @param y        meters north of the campus origin
+     * @throws RuntimeException if a walkway from the building would be shorter than the straight line
+     */
+    public void setLocation(Building building, double x, double y) {
+        int id = idOf(building);
+        for (int k = 0; k < degree[id]; k++) {
+            int other = neighbors[id][k];
+            if (located[other] && lengths[id][k] < Math.hypot(x - xs[other], y - ys[other]) * (1 - TOLERANCE)) {
+                throw new RuntimeException("The walkway from " + building.getName() + " to " + nodes[other].getName()
+                        + " would be shorter than the straight line between them.");
+            }
+        }
+        if (!located[id]) {
+            located[id] = true;
+            nLocated++;
+        }
+        xs[id] = x;
+        ys[id] = y;
+    }
+
+    /**
+     * Adds a walkway between two buildings, or changes its length if there already is one.
+     *
+     * @param a      one end
+     * @param b      the other end
+     * @param meters the length of the walkway
+     * @throws RuntimeException if the length is negative or shorter than the straight line between located buildings
+     */
+    public void addWalkway(Building a, Building b, double meters) {
+        int u = idOf(a);
+        int v = idOf(b);
+        if (u == v) {
+            throw new RuntimeException("A walkway must connect two different buildings.");
+        }
+        if (!(meters >= 0) || (located[u] && located[v] && meters < straightLine(u, v) * (1 - TOLERANCE))) {
+            throw new RuntimeException("A walkway from " + a.getName() + " to " + b.getName() + " cannot be " + meters + " meters long.");
+        }
+        if (indexOf(u, v) >= 0) {
+            removeEdge(u, v);
+        }
+        link(u, v, meters);
+        link(v, u, meters);
+        if (table != null) {
+            refresh(); // The update below reads every row
+            double[][] d = table;
+            IntStream.range(0, nextId).parallel().forEach(i -> {
+                double[] row = d[i];
+                double viaU = row[u] + meters;
+                double viaV = row[v] + meters;
+                if (nodes[i] == null || (viaU >= row[v] && viaV >= row[u])) {
+                    return; // The new walkway doesn't get anywhere quicker from i
+                }
+                double[] fromU = d[u];
+                double[] fromV = d[v];
+                for (int j = 0; j < nextId; j++) {
+                    double best = Math.min(viaU + fromV[j], viaV + fromU[j]);
+                    if (best < row[j]) {
+                        row[j] = best;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Adds a walkway along the straight line between two located buildings.
+     *
+     * @param a one end
+     * @param b the other end
+     * @throws RuntimeException if either building has no location
+     */
+    public void addWalkway(Building a, Building b) {
+        int u = idOf(a);
+        int v = idOf(b);
+        if (!located[u] || !located[v]) {
+            throw new RuntimeException("Both buildings need a location to add a walkway without a length.");
+        }
+        addWalkway(a, b, straightLine(u, v));
+    }
+
+    /**
+     * Removes the walkway between two buildings.
+     *
+     * @param a one end
+     * @param b the other end
+     * @return true if there was a walkway to remove
+     */
+    public boolean removeWalkway(Building a, Building b) {
+        int u = idOf(a);
+        int v = idOf(b);
+        if (indexOf(u, v) < 0) {
+            return false;
+        }
+        removeEdge(u, v);
+        return true;
+    }
+
+    /**
+     * Returns the length of the shortest route between two buildings.
+     *
+     * @param from where the route starts
+     * @param to   where it ends
+     * @return the distance in meters, or infinity if there is no route
+     */
+    public double distance(Building from, Building to) {
+        int s = idOf(from);
+        int t = idOf(to);
+        if (table == null) {
+            search(s, t);
+            return searchSeen[t] == epoch ? searchCost[t] : INFINITY;
+        }
+        if (!stale[s]) {
+            return table[s][t];
+        }
+        freshRow(t); // Walkways are two-way, so the distance back is the same
+        return table[t][s];
+    }
+
+    /**
+     * Returns the shortest route between two buildings.
+     *
+     * @param from where the route starts
+     * @param to   where it ends
+     * @return the buildings along the route, from first to last (empty if there is no route)
+     */
+    public List<Building> route(Building from, Building to) {
+        int s = idOf(from);
+        int t = idOf(to);
+        if (table == null) {
+            return searchedRoute(s, t);
+        }
+        ArrayList<Building> path = new ArrayList<>();
+        double[] toTarget = freshRow(t);
+        if (toTarget[s] == INFINITY) {
+            return path;
+        }
+        /*
+         * Follow walkways that lie on a shortest route, preferring the neighbor
+         * with the least distance left. Zero-length walkways leave the distance
+         * unchanged, so a neighbor no closer than here is only taken if the
+         * route hasn't been there yet; otherwise two buildings 0 m apart would
+         * be stepped between forever.
+         */
+        HashSet<Integer> visited = new HashSet<>();
+        for (int x = s; ; ) {
+            path.add(nodes[x]);
+            visited.add(x);
+            if (x == t) {
+                return path;
+            }
+            int best = -1;
+            for (int k = 0; k < degree[x]; k++) {
+                int nb = neighbors[x][k];
+                boolean onShortestRoute = lengths[x][k] + toTarget[nb] <= toTarget[x] * (1 + TOLERANCE);
+                boolean closer = toTarget[nb] < toTarget[x];
+                if (onShortestRoute && (closer || !visited.contains(nb)) && (best == -1 || toTarget[nb] < toTarget[best])) {
+                    best = nb;
+                }
+            }
+            if (best == -1) {
+                return searchedRoute(s, t); // Dead end among 0 m walkways; search instead
+            }
+            x = best;
+        }
+    }
+
+    private List<Building> searchedRoute(int s, int t) {
+        ArrayList<Building> path = new ArrayList<>();
+        search(s, t);
+        if (searchSeen[t] == epoch) {
+            for (int x = t; x != -1; x = searchPrev[x]) {
+                path.add(nodes[x]);
+            }
+            Collections.reverse(path);
+        }
+        return path;
+    }
+
+    /**
+     * Builds the table of distances between every pair of buildings, searching
+     * from each building in parallel. Until then, every query is a search.
+     */
+    public void precompute() {
+        int capacity = nodes.length;
+        table = new double[capacity][];
+        for (int i = 0; i < capacity; i++) {
+            table[i] = new double[capacity];
+            Arrays.fill(table[i], INFINITY);
+        }
+        stale = new boolean[capacity];
+        Arrays.fill(stale, 0, nextId, true);
+        refresh();
+    }
+
+    /**
+     * Searches again, in parallel, every row of the table that a removal made out of date.
+     */
+    public void refresh() {
+        if (table == null) {
+            return;
+        }
+        IntStream.range(0, nextId).parallel().filter(i -> stale[i] && nodes[i] != null).forEach(i -> {
+            dijkstra(i, table[i]);
+            stale[i] = false;
+        });
+    }
+
+    public boolean isPrecomputed() {
+        return table != null;
+    }
+
+    /**
+     * Returns how many rows of the table are waiting to be searched again.
+     *
+     * @return the number of out-of-date rows, 0 if there is no table
+     */
+    public int getStaleRows() {
+        int count = 0;
+        for (int i = 0; table != null && i < nextId; i++) {
+            if (stale[i] && nodes[i] != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Called by the CampusMap when a building is added: it joins the routes with no walkways.
+     *
+     * @param building the new building
+     */
+    public void buildingAdded(Building building) {
+        if (ids.containsKey(building)) {
+            return;
+        }
+        int id = freeIds.isEmpty() ? nextId++ : freeIds.poll();
+        if (id == nodes.length) {
+            grow();
+        }
+        ids.put(building, id);
+        nodes[id] = building;
+        neighbors[id] = new int[4];
+        lengths[id] = new double[4];
+        degree[id] = 0;
+        located[id] = false;
+        live++;
+        if (table != null) { // Nobody can reach it yet
+            Arrays.fill(table[id], INFINITY);
+            for (int i = 0; i < nextId; i++) {
+                table[i][id] = INFINITY;
+            }
+            table[id][id] = 0;
+            stale[id] = false;
+        }
+    }
+
+    /**
+     * Called by the CampusMap when a building is removed, along with its walkways.
+     *
+     * @param building the removed building
+     */
+    public void buildingRemoved(Building building) {
+        Integer boxed = ids.remove(building);
+        if (boxed == null) {
+            return;
+        }
+        int id = boxed;
+        while (degree[id] > 0) {
+            removeEdge(id, neighbors[id][degree[id] - 1]);
+        }
+        if (located[id]) {
+            located[id] = false;
+            nLocated--;
+        }
+        nodes[id] = null;
+        live--;
+        freeIds.add(id);
+    }
+
+    /* The table row for a node, searching again first if it is out of date */
+    private double[] freshRow(int id) {
+        if (stale[id]) {
+            dijkstra(id, table[id]);
+            stale[id] = false;
+        }
+        return table[id];
+    }
+
+    /* Removes a walkway, first marking every table row whose shortest routes may have used it */
+    private void removeEdge(int u, int v) {
+        double meters = lengths[u][indexOf(u, v)];
+        if (table != null) {
+            for (int i = 0; i < nextId; i++) {
+                if (!stale[i] && nodes[i] != null && (uses(table[i], u, v, meters) || uses(table[i], v, u, meters))) {
+                    stale[i] = true;
+                }
+            }
+        }
+        unlink(u, v);
+        unlink(v, u);
+    }
+
+    /* Whether a shortest route in this row could reach b by way of the walkway from a */
+    private static boolean uses(double[] row, int a, int b, double meters) {
+        return row[a] != INFINITY && row[a] + meters <= row[b] * (1 + TOLERANCE) + TOLERANCE;
+    }
+
+    /* Dijkstra from a node, writing the distance to every node into row */
+    private void dijkstra(int source, double[] row) {
+        Arrays.fill(row, 0, nextId, INFINITY);
+        row[source] = 0;
+        Frontier queue = new Frontier(); // One per search, so rows can be searched in parallel
+        queue.push(0, source);
+        while (queue.size > 0) {
+            queue.pop();
+            double cost = queue.keys[queue.size];
+            int u = queue.nodes[queue.size];
+            if (cost > row[u]) {
+                continue; // Already reached more cheaply
+            }
+            for (int k = 0; k < degree[u]; k++) {
+                int v = neighbors[u][k];
+                double next = cost + lengths[u][k];
+                if (next < row[v]) {
+                    row[v] = next;
+                    queue.push(next, v);
+                }
+            }
+        }
+    }
+
+    /* A* (or Dijkstra if some building has no location) from s until t is reached; results are stamped with epoch */
+    private void search(int s, int t) {
+        if (searchCost == null || searchCost.length < nodes.length) {
+            searchCost = new double[nodes.length];
+            searchPrev = new int[nodes.length];
+            searchSeen = new int[nodes.length];
+            searchDone = new int[nodes.length];
+        }
+        epoch++;
+        boolean guided = nLocated == live;
+        frontier.size = 0;
+        searchCost[s] = 0;
+        searchPrev[s] = -1;
+        searchSeen[s] = epoch;
+        frontier.push(guided ? straightLine(s, t) : 0, s);
+        while (frontier.size > 0) {
+            frontier.pop();
+            int u = frontier.nodes[frontier.size];
+            if (u == t) {
+                return;
+            }
+            if (searchDone[u] == epoch) {
+                continue;
+            }
+            searchDone[u] = epoch;
+            for (int k = 0; k < degree[u]; k++) {
+                int v = neighbors[u][k];
+                double cost = searchCost[u] + lengths[u][k];
+                if (searchSeen[v] != epoch || cost < searchCost[v]) {
+                    searchSeen[v] = epoch;
+                    searchCost[v] = cost;
+                    searchPrev[v] = u;
+                    frontier.push(guided ? cost + straightLine(v, t) : cost, v);
+                }
+            }
+        }
+    }
+
+    private double straightLine(int u, int v) {
+        return Math.hypot(xs[u] - xs[v], ys[u] - ys[v]);
+    }
+
+    private int idOf(Building building) {
+        Integer id = ids.get(building);
+        if (id == null) {
+            throw new RuntimeException(building.getName() + " is not on this map.");
+        }
+        return id;
+    }
+
+    private int indexOf(int u, int v) {
+        for (int k = 0; k < degree[u]; k++) {
+            if (neighbors[u][k] == v) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private void link(int u, int v, double meters) {
+        if (degree[u] == neighbors[u].length) {
+            neighbors[u] = Arrays.copyOf(neighbors[u], degree[u] * 2);
+            lengths[u] = Arrays.copyOf(lengths[u], degree[u] * 2);
+        }
+        neighbors[u][degree[u]] = v;
+        lengths[u][degree[u]++] = meters;
+    }
+
+    private void unlink(int u, int v) {
+        int k = indexOf(u, v);
+        int last = --degree[u];
+        neighbors[u][k] = neighbors[u][last];
+        lengths[u][k] = lengths[u][last];
+    }
+
+    /* Doubles the room for nodes, including the table if there is one */
+    private void grow() {
+        int capacity = nodes.length * 2;
+        nodes = Arrays.copyOf(nodes, capacity);
+        neighbors = Arrays.copyOf(neighbors, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        degree = Arrays.copyOf(degree, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        located = Arrays.copyOf(located, capacity);
+        if (table != null) {
+            double[][] bigger = new double[capacity][];
+            for (int i = 0; i < capacity; i++) {
+                bigger[i] = i < table.length ? Arrays.copyOf(table[i], capacity) : new double[capacity];
+                Arrays.fill(bigger[i], i < table.length ? table.length : 0, capacity, INFINITY);
+            }
+            table = bigger;
+            stale = Arrays.copyOf(stale, capacity);
+        }
+    }
+
+    /**
+     * Lays out a 40 x 40 grid of buildings joined by walkways and compares
+     * search, table build and table lookup times.
+     */
+    public static void main(String[] args) {
+        EventSink previousSink = Events.getSink();
+        Events.setSink(Events.SILENT);
+        int side = 40;
+        CampusMap map = new CampusMap();
+        CampusRoutes routes = new CampusRoutes(map);
+        Building[] grid = new Building[side * side];
+        Random random = new Random(2025);
+        for (int i = 0; i < grid.length; i++) {
+            grid[i] = new Building("Hall " + i, i + " College Lane", 1 + i % 4);
+            map.addBuilding(grid[i]);
+            routes.setLocation(grid[i], (i % side) * 100.0, (i / side) * 100.0);
+        }
+        for (int i = 0; i < grid.length; i++) {
+            if (i % side < side - 1) {
+                routes.addWalkway(grid[i], grid[i + 1], 100 * (1 + 0.3 * random.nextDouble()));
+            }
+            if (i / side < side - 1) {
+                routes.addWalkway(grid[i], grid[i + side], 100 * (1 + 0.3 * random.nextDouble()));
+            }
+        }
+        Events.setSink(previousSink);
+
+        int queries = 2_000;
+        int[] from = new int[queries];
+        int[] to = new int[queries];
+        for (int q = 0; q < queries; q++) {
+            from[q] = random.nextInt(grid.length);
+            to[q] = random.nextInt(grid.length);
+        }
+        double check = 0;
+        long start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            check += routes.distance(grid[from[q]], grid[to[q]]);
+        }
+        System.out.println(String.format("A* search:        %8.2f us per query", (System.nanoTime() - start) / 1e3 / queries));
+
+        start = System.nanoTime();
+        routes.precompute();
+        System.out.println(String.format("All-pairs table:  %8.1f ms for %,d buildings", (System.nanoTime() - start) / 1e6, grid.length));
+
+        double checkTable = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            checkTable += routes.distance(grid[from[q]], grid[to[q]]);
+        }
+        System.out.println(String.format("Table lookup:     %8.2f us per query", (System.nanoTime() - start) / 1e3 / queries));
+        start = System.nanoTime();
+        int steps = 0;
+        for (int q = 0; q < queries; q++) {
+            steps += routes.route(grid[from[q]], grid[to[q]]).size();
+        }
+        System.out.println(String.format("Table route:      %8.2f us per query (%.1f buildings per route)",
+                (System.nanoTime() - start) / 1e3 / queries, (double) steps / queries));
+        System.out.println("Search and table agree: " + (Math.abs(check - checkTable) < 1e-6 * check));
+
+        Building corner = grid[0];
+        Building farCorner = grid[grid.length - 1];
+        System.out.println(String.format("Corner to corner: %.0f m", routes.distance(corner, farCorner)));
+        Building bridge = new Building("Diagonal Bridge", "1 Paradise Pond Rd", 1);
+        Events.setSink(Events.SILENT);
+        map.addBuilding(bridge);
+        Events.setSink(previousSink);
+        routes.setLocation(bridge, side * 50.0, side * 50.0);
+        start = System.nanoTime();
+        routes.addWalkway(corner, bridge);
+        routes.addWalkway(bridge, farCorner);
+        System.out.println(String.format("With a diagonal bridge: %.0f m (added in %.1f ms)",
+                routes.distance(corner, farCorner), (System.nanoTime() - start) / 1e6));
+        Events.setSink(Events.SILENT);
+        map.removeBuilding(bridge);
+        Events.setSink(previousSink);
+        System.out.println("Removing the bridge left " + routes.getStaleRows() + " rows to search again");
+        System.out.println(String.format("Without the bridge: %.0f m", routes.distance(corner, farCorner)));
+    }
+}
@@ -0,0 +1,429 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A whole CampusMap saved to one binary file, and read back lazily.
+ *
+ * write() saves every building with its subclass state: a library's titles and
+ * copies, a house's features and residents, a cafe's stock. open() maps the
+ * file into memory and reads only its header and trailer, so it takes about
+ * the same time for a million buildings as for ten. Buildings are only
+ * constructed when asked for, one at a time with getBuilding() or all at once
+ * with toCampusMap(), and getName(), getAddress() and getFloors() read straight
+ * from the file without constructing anything.
+ *
+ * File layout (version 2, big-endian):
+ *
+ *     int magic "CSNP", int version
+ *     one record per building, in map order:
+ *         byte type, string name, string address, int floors, then by type
+ *         House:   boolean dining room, boolean elevator, int capacity,
+ *                  int residents, then (string name, string id, int class year) each
+ *         Library: int expected titles, then (true, string title, int total, int available) each, then false;
+ *                  or, for a library with an on-disk catalog, int -1 and string catalog directory
+ *         Cafe:    int coffee ounces, int sugar packets, int creams, int cups
+ *     long offset of each record
+ *     long offset of the first record offset, int building count   (the trailer)
+ *
+ * Strings are an int length and that many UTF-8 bytes, or length -1 for null.
+ * Version 1 is the same without on-disk catalogs, and can still be read.
+ * An on-disk catalog (see DiskHoldings) is flushed but not copied: restoring
+ * the library reopens its directory, so the library saved must be closed
+ * before the restored one is used.
+ * A single mapping limits snapshots to 2 GB. Students' courses and cafe sales
+ * totals are not saved.
+ */
+public class CampusSnapshot {
+
+    private static final int MAGIC = 0x43534E50; // "CSNP"
+    private static final int VERSION = 2;
+    private static final int ON_DISK = -1;       // Expected titles of a library whose catalog is on disk
+    private static final int TRAILER_BYTES = 12;
+
+    private static final byte BUILDING = 0;
+    private static final byte HOUSE = 1;
+    private static final byte LIBRARY = 2;
+    private static final byte CAFE = 3;
+    private static final String[] TYPE_NAMES = {"Building", "House", "Library", "Cafe"};
+
+    private MappedByteBuffer file;
+    private int count;
+    private long offsetTable;
+    private AtomicReferenceArray<Building> built; // Buildings constructed so far
+
+    private CampusSnapshot(MappedByteBuffer file, int count, long offsetTable) {
+        this.file = file;
+        this.count = count;
+        this.offsetTable = offsetTable;
+        this.built = new AtomicReferenceArray<>(count);
+    }
+
+    /**
+     * Saves a campus map to a file, replacing it atomically if it exists.
+     *
+     * @param map  the map to save
+     * @param path the snapshot file
+     * @throws UncheckedIOException if the file can't be written
+     */
+    public static void write(CampusMap map, Path path) {
+        ArrayList<Building> buildings = new ArrayList<>(map.getBuildings());
+        long[] offsets = new long[buildings.size()];
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int i = 0; i < buildings.size(); i++) {
+                offsets[i] = out.size();
+                writeBuilding(out, buildings.get(i));
+                if (out.size() < 0) { // DataOutputStream's count saturates at Integer.MAX_VALUE
+                    throw new IOException("Campus snapshot would be larger than 2 GB.");
+                }
+            }
+            long table = out.size();
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            out.writeLong(table);
+            out.writeInt(buildings.size());
+            out.flush();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Campus snapshot would be larger than 2 GB.");
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write campus snapshot " + path, e);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write campus snapshot " + path, e);
+        }
+    }
+
+    /**
+     * Maps a snapshot file into memory. Nothing is constructed until asked for.
+     *
+     * @param path the snapshot file
+     * @return the snapshot
+     * @throws UncheckedIOException if the file can't be read or isn't a campus snapshot
+     */
+    public static CampusSnapshot open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE || size < 8 + TRAILER_BYTES) {
+                throw new IOException("Not a campus snapshot: " + path);
+            }
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            file.order(ByteOrder.BIG_ENDIAN);
+            if (file.getInt(0) != MAGIC) {
+                throw new IOException("Not a campus snapshot: " + path);
+            }
+            if (file.getInt(4) != VERSION && file.getInt(4) != 1) {
+                throw new IOException("Unsupported campus snapshot version " + file.getInt(4) + ": " + path);
+            }
+            long table = file.getLong((int) size - TRAILER_BYTES);
+            int count = file.getInt((int) size - TRAILER_BYTES + 8);
+            if (count < 0 || table < 8 || table + 8L * count != size - TRAILER_BYTES) {
+                throw new IOException("Damaged campus snapshot: " + path);
+            }
+            return new CampusSnapshot(file, count, table);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open campus snapshot " + path, e);
+        }
+    }
+
+    /**
+     * Returns the number of buildings in the snapshot.
+     *
+     * @return the number of buildings
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Returns the kind of a building without constructing it.
+     *
+     * @param i the building's position, in map order
+     * @return "Building", "House", "Library" or "Cafe"
+     */
+    public String getType(int i) {
+        return TYPE_NAMES[file.get(offset(i))];
+    }
+
+    public String getName(int i) {
+        return new Reader(offset(i) + 1).readString();
+    }
+
+    public String getAddress(int i) {
+        Reader in = new Reader(offset(i) + 1);
+        in.skipString();
+        return in.readString();
+    }
+
+    public int getFloors(int i) {
+        Reader in = new Reader(offset(i) + 1);
+        in.skipString();
+        in.skipString();
+        return in.readInt();
+    }
+
+    /**
+     * Returns a building, constructing it the first time it is asked for.
+     * Every call for the same position returns the same object.
+     *
+     * @param i the building's position, in map order
+     * @return the building, with its collection, residents or stock restored
+     */
+    public Building getBuilding(int i) {
+        Building b = built.get(i);
+        if (b == null) {
+            b = readBuilding(offset(i));
+            if (!built.compareAndSet(i, null, b)) {
+                b = built.get(i); // Another thread got there first
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Returns how many buildings have been constructed so far.
+     *
+     * @return the number of buildings materialized
+     */
+    public int getMaterialized() {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (built.get(i) != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Constructs every building and puts them on a new CampusMap, in their saved order.
+     *
+     * @return the restored map
+     */
+    public CampusMap toCampusMap() {
+        CampusMap map = new CampusMap();
+        for (int i = 0; i < count; i++) {
+            map.addBuilding(getBuilding(i));
+        }
+        return map;
+    }
+
+    private int offset(int i) {
+        if (i < 0 || i >= count) {
+            throw new RuntimeException("No building #" + i + " in this snapshot of " + count + " buildings.");
+        }
+        return (int) file.getLong((int) (offsetTable + 8L * i));
+    }
+
+    private static void writeBuilding(DataOutputStream out, Building b) throws IOException {
+        byte type = b instanceof House ? HOUSE : b instanceof Library ? LIBRARY : b instanceof Cafe ? CAFE : BUILDING;
+        out.writeByte(type);
+        writeString(out, b.getName());
+        writeString(out, b.getAddress());
+        out.writeInt(b.getFloors());
+        if (type == HOUSE) {
+            House house = (House) b;
+            out.writeBoolean(house.hasDiningRoom());
+            out.writeBoolean(house.hasElevator());
+            out.writeInt(house.getCapacity());
+            ArrayList<Student> residents = new ArrayList<>(house.getResidents());
+            out.writeInt(residents.size());
+            for (Student s : residents) {
+                writeString(out, s.getName());
+                writeString(out, s.getId());
+                out.writeInt(s.getClassYear());
+            }
+        } else if (type == LIBRARY && ((Library) b).getDiskHoldings() != null) {
+            Library library = (Library) b;
+            library.sync(); // The snapshot only points at the catalog, so make sure it is all on disk
+            out.writeInt(ON_DISK);
+            writeString(out, library.getDiskHoldings().getDirectory().toAbsolutePath().toString());
+        } else if (type == LIBRARY) {
+            Holdings holdings = ((Library) b).holdings();
+            out.writeInt(holdings.size());
+            try {
+                holdings.forEach((title, total, available) -> {
+                    try {
+                        out.writeBoolean(true); // Another title follows
+                        writeString(out, title);
+                        out.writeInt(total);
+                        out.writeInt(available);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.writeBoolean(false);
+        } else if (type == CAFE) {
+            Cafe cafe = (Cafe) b;
+            out.writeInt(cafe.getCoffeeOunces());
+            out.writeInt(cafe.getSugarPackets());
+            out.writeInt(cafe.getCreams());
+            out.writeInt(cafe.getCups());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private Building readBuilding(int position) {
+        Reader in = new Reader(position);
+        byte type = in.readByte();
+        String name = in.readString();
+        String address = in.readString();
+        int floors = in.readInt();
+        switch (type) {
+            case HOUSE: {
+                boolean diningRoom = in.readByte() != 0;
+                boolean elevator = in.readByte() != 0;
+                House house = new House(name, address, floors, diningRoom, elevator, in.readInt());
+                int n = in.readInt();
+                ArrayList<Student> residents = new ArrayList<>(n);
+                for (int r = 0; r < n; r++) {
+                    residents.add(new Student(in.readString(), in.readString(), in.readInt()));
+                }
+                house.moveInAll(residents);
+                return house;
+            }
+            case LIBRARY: {
+                int expectedTitles = in.readInt();
+                if (expectedTitles == ON_DISK) {
+                    return new Library(name, address, floors, Path.of(in.readString()));
+                }
+                Library library = new Library(name, address, floors, Math.max(16, expectedTitles));
+                while (in.readByte() != 0) {
+                    library.restoreTitle(in.readString(), in.readInt(), in.readInt());
+                }
+                library.invalidateTitleIndex();
+                return library;
+            }
+            case CAFE:
+                return new Cafe(name, address, floors, in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            case BUILDING:
+                return new Building(name, address, floors);
+            default:
+                throw new RuntimeException("Damaged campus snapshot: unknown building type " + type + ".");
+        }
+    }
+
+    /* Reads fields from the mapped file with absolute gets, so readers on different threads don't interfere */
+    private final class Reader {
+        private int position;
+
+        Reader(int position) {
+            this.position = position;
+        }
+
+        byte readByte() {
+            return file.get(position++);
+        }
+
+        int readInt() {
+            int value = file.getInt(position);
+            position += 4;
+            return value;
+        }
+
+        String readString() {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            file.get(position, bytes);
+            position += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void skipString() {
+            int length = readInt();
+            position += Math.max(length, 0);
+        }
+    }
+
+    /**
+     * Saves a large campus, then compares opening the snapshot with rebuilding the map.
+     */
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        EventSink previousSink = Events.getSink();
+        Events.setSink(Events.SILENT);
+        long start = System.nanoTime();
+        CampusMap map = new CampusMap();
+        for (int i = 0; i < n; i++) {
+            if (i % 100 == 0) {
+                Library library = new Library("Library " + i, i + " College Lane", 3);
+                library.addTitle("The Great Gatsby");
+                library.addTitle("1984");
+                library.addCopies("1984", 2);
+                library.checkOut("1984");
+                map.addBuilding(library);
+            } else if (i % 100 == 1) {
+                House house = new House("House " + i, i + " College Lane", 3, true, false, 40);
+                house.moveIn(new Student("Resident " + i, "R" + i, 2027));
+                map.addBuilding(house);
+            } else if (i % 100 == 2) {
+                map.addBuilding(new Cafe("Cafe " + i, i + " College Lane", 1, 400, 90, 80, 45));
+            } else {
+                map.addBuilding(new Building("Hall " + i, i + " College Lane", 1 + i % 5));
+            }
+        }
+        System.out.println(String.format("Built a %,d-building map in %.0f ms", n, (System.nanoTime() - start) / 1e6));
+
+        Path path = Files.createTempFile("campus", ".snapshot");
+        start = System.nanoTime();
+        write(map, path);
+        System.out.println(String.format("Wrote %,d bytes in %.0f ms", Files.size(path), (System.nanoTime() - start) / 1e6));
+
+        start = System.nanoTime();
+        CampusSnapshot snapshot = open(path);
+        System.out.println(String.format("Opened the snapshot in %.2f ms", (System.nanoTime() - start) / 1e6));
+        start = System.nanoTime();
+        Library library = (Library) snapshot.getBuilding(n / 2 / 100 * 100);
+        House house = (House) snapshot.getBuilding(n / 2 / 100 * 100 + 1);
+        Cafe cafe = (Cafe) snapshot.getBuilding(n / 2 / 100 * 100 + 2);
+        System.out.println(String.format("Materialized 3 buildings in %.2f ms", (System.nanoTime() - start) / 1e6));
+        System.out.println("  " + library.getName() + ": 1984 has " + library.availableCopiesOf("1984") + " of "
+                + library.copiesOf("1984") + " copies on the shelf");
+        System.out.println("  " + house.getName() + ": " + house.getResidents());
+        System.out.println("  " + cafe.getName() + ": " + cafe.getCups() + " cups");
+        System.out.println("  Last building: " + snapshot.getName(n - 1) + " (" + snapshot.getType(n - 1) + ", "
+                + snapshot.getFloors(n - 1) + " floors), " + snapshot.getMaterialized() + " buildings constructed");
+
+        start = System.nanoTime();
+        CampusMap restored = snapshot.toCampusMap();
+        System.out.println(String.format("Restored all %,d buildings in %.0f ms", restored.size(), (System.nanoTime() - start) / 1e6));
+        Events.setSink(previousSink);
+        Files.delete(path);
+    }
+}
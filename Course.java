@@ -1,14 +1,54 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Course {
 
     // Attributes
     private String name;
     private String subjectNumber;
     private String meetingTime; 
+    private MeetingTime schedule;     // meetingTime parsed into time slots
+    private int capacity;             // Most students who can enroll
+    private AtomicInteger enrolled;   // Seats taken, claimed and released with compare-and-set
+    private CourseCatalog catalog;    // The catalog this course belongs to, or null if made directly
+    private int catalogId = -1;       // Its id in that catalog
 
+    /**
+     * Constructs a course with no limit on enrollment. A meeting time that
+     * can't be read is kept as written; students just can't enroll in the
+     * course until it is fixed (see MeetingTime.parseOrUnread).
+     *
+     * @param name          the course title
+     * @param subjectNumber the subject and number, e.g. "CSC120"
+     * @param meetingTime   when it meets, e.g. "TR 10:50"
+     */
     public Course(String name, String subjectNumber, String meetingTime) {
+        this(name, subjectNumber, meetingTime, MeetingTime.parseOrUnread(meetingTime), Integer.MAX_VALUE); // No limit on enrollment
+    }
+
+    /**
+     * Overloaded constructor for a course with limited seats.
+     *
+     * @param name          the course title
+     * @param subjectNumber the subject and number, e.g. "CSC120"
+     * @param meetingTime   when it meets, e.g. "TR 10:50" (see MeetingTime)
+     * @param capacity      the most students who can enroll
+     * @throws RuntimeException if the meeting time can't be read or the capacity is negative
+     */
+    public Course(String name, String subjectNumber, String meetingTime, int capacity) {
+        this(name, subjectNumber, meetingTime, MeetingTime.parse(meetingTime), capacity);
+    }
+
+    /* Constructor used by CourseCatalog, which shares one parsed MeetingTime between sections meeting at the same time */
+    Course(String name, String subjectNumber, String meetingTime, MeetingTime schedule, int capacity) {
+        if (capacity < 0) {
+            throw new RuntimeException("Cannot construct a course with a negative capacity.");
+        }
         this.name = name;
         this.subjectNumber = subjectNumber;
         this.meetingTime = meetingTime; 
+        this.schedule = schedule;
+        this.capacity = capacity;
+        this.enrolled = new AtomicInteger();
     }
 
     public String getName() {
@@ -23,6 +63,59 @@ public class Course {
         return this.meetingTime;
     }
 
+    public MeetingTime getSchedule() {
+        return this.schedule;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public int getEnrolled() {
+        return this.enrolled.get();
+    }
+
+    public int getSeatsLeft() {
+        return this.capacity - this.enrolled.get();
+    }
+
+    /**
+     * Returns the course's id in its CourseCatalog.
+     *
+     * @return the id, or -1 if the course wasn't made by a catalog
+     */
+    public int getCatalogId() {
+        return this.catalogId;
+    }
+
+    CourseCatalog getCatalog() {
+        return this.catalog;
+    }
+
+    /* Called once by the catalog that made this course */
+    void setCatalog(CourseCatalog catalog, int catalogId) {
+        this.catalog = catalog;
+        this.catalogId = catalogId;
+    }
+
+    /* Claims a seat if one is left */
+    boolean reserveSeat() {
+        while (true) {
+            int taken = enrolled.get();
+            if (taken >= capacity) {
+                return false;
+            }
+            if (enrolled.compareAndSet(taken, taken + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /* Gives back a seat claimed with reserveSeat() */
+    void releaseSeat() {
+        enrolled.decrementAndGet();
+    }
+
     public String toString() {
         return this.subjectNumber + ": " + this.name + " " + this.meetingTime; 
     }
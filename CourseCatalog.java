@@ -0,0 +1,225 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The course catalog: one shared Course object per section, keyed by subject
+ * number, each with a small int id.
+ *
+ * Ask the catalog for a course with intern() instead of constructing it, and
+ * every student taking the section shares the same object (and its strings and
+ * parsed meeting time, which are shared between sections meeting at the same
+ * time too). Students store catalog courses as int ids, not references, and
+ * the catalog keeps the reverse lookup: each course's roster of students.
+ *
+ * Looking courses up, by id or subject number, never locks; adding a new
+ * section briefly does.
+ */
+public class CourseCatalog {
+
+    private ConcurrentHashMap<String, Course> bySubject;          // Subject number -> course
+    private ConcurrentHashMap<String, MeetingTime> meetingTimes;  // Parsed meeting times, shared between sections
+    private volatile Course[] courses;                            // Id -> course
+    private volatile Set<Student>[] rosters;                      // Id -> students enrolled
+    private int size;
+
+    /**
+     * Constructs an empty catalog.
+     */
+    @SuppressWarnings("unchecked")
+    public CourseCatalog() {
+        this.bySubject = new ConcurrentHashMap<>();
+        this.meetingTimes = new ConcurrentHashMap<>();
+        this.courses = new Course[16];
+        this.rosters = (Set<Student>[]) new Set<?>[16];
+    }
+
+    /**
+     * Returns the catalog's course for a section, creating it the first time.
+     *
+     * @param name          the course title
+     * @param subjectNumber the subject and number, e.g. "CSC120"
+     * @param meetingTime   when it meets, e.g. "TR 10:50"
+     * @param capacity      the most students who can enroll
+     * @return the one Course object for this section
+     * @throws RuntimeException if the section is already in the catalog with different details
+     */
+    public Course intern(String name, String subjectNumber, String meetingTime, int capacity) {
+        Course course = bySubject.get(subjectNumber);
+        if (course == null) {
+            synchronized (this) {
+                course = bySubject.get(subjectNumber);
+                if (course == null) {
+                    course = add(name, subjectNumber, meetingTime, capacity);
+                }
+            }
+        }
+        if (!Objects.equals(course.getName(), name) || !Objects.equals(course.getMeetingTime(), meetingTime)
+                || course.getCapacity() != capacity) {
+            throw new RuntimeException(subjectNumber + " is already in the catalog as " + course + ".");
+        }
+        return course;
+    }
+
+    /**
+     * Overloaded intern for a section with no limit on enrollment.
+     *
+     * @param name          the course title
+     * @param subjectNumber the subject and number, e.g. "CSC120"
+     * @param meetingTime   when it meets, e.g. "TR 10:50"
+     * @return the one Course object for this section
+     */
+    public Course intern(String name, String subjectNumber, String meetingTime) {
+        return intern(name, subjectNumber, meetingTime, Integer.MAX_VALUE);
+    }
+
+    /* Creates a course and gives it the next id; called while holding the catalog's lock */
+    @SuppressWarnings("unchecked")
+    private Course add(String name, String subjectNumber, String meetingTime, int capacity) {
+        MeetingTime schedule = meetingTimes.computeIfAbsent(meetingTime, MeetingTime::parse);
+        Course course = new Course(name, subjectNumber, meetingTime, schedule, capacity);
+        if (size == courses.length) {
+            rosters = Arrays.copyOf(rosters, size * 2);
+            courses = Arrays.copyOf(courses, size * 2);
+        }
+        Set<Student> roster = ConcurrentHashMap.newKeySet();
+        rosters[size] = roster;
+        course.setCatalog(this, size);
+        Course[] table = courses;
+        table[size] = course;
+        courses = table; // Publish the new entry to lock-free readers
+        size++;
+        bySubject.put(subjectNumber, course);
+        return course;
+    }
+
+    /**
+     * Returns the course with a subject number.
+     *
+     * @param subjectNumber the subject and number, e.g. "CSC120"
+     * @return the course, or null if it isn't in the catalog
+     */
+    public Course get(String subjectNumber) {
+        return bySubject.get(subjectNumber);
+    }
+
+    /**
+     * Returns the course with an id.
+     *
+     * @param id the course's catalog id
+     * @return the course
+     * @throws RuntimeException if there is no course with that id
+     */
+    public Course get(int id) {
+        Course[] table = courses;
+        Course course = id >= 0 && id < table.length ? table[id] : null;
+        if (course == null) {
+            throw new RuntimeException("No course with id " + id + " in the catalog.");
+        }
+        return course;
+    }
+
+    /**
+     * Returns the number of sections in the catalog.
+     *
+     * @return the number of courses
+     */
+    public int size() {
+        return bySubject.size();
+    }
+
+    /**
+     * Returns the students enrolled in a course.
+     *
+     * @param course a course from this catalog
+     * @return a copy of its roster, in no particular order
+     */
+    public List<Student> getRoster(Course course) {
+        return new ArrayList<>(rosterOf(course));
+    }
+
+    /**
+     * Returns how many students are on a course's roster.
+     *
+     * @param course a course from this catalog
+     * @return the number of students enrolled
+     */
+    public int getRosterSize(Course course) {
+        return rosterOf(course).size();
+    }
+
+    /* Called by Student while it holds its own lock */
+    void addToRoster(Course course, Student student) {
+        rosterOf(course).add(student);
+    }
+
+    void removeFromRoster(Course course, Student student) {
+        rosterOf(course).remove(student);
+    }
+
+    private Set<Student> rosterOf(Course course) {
+        if (course.getCatalog() != this) {
+            throw new RuntimeException(course + " isn't from this catalog.");
+        }
+        return rosters[course.getCatalogId()];
+    }
+
+    /**
+     * Enrolls 50,000 students in 5 courses each, first with a new Course
+     * object per enrollment, then through the catalog, and compares memory.
+     */
+    public static void main(String[] args) {
+        String[] days = {"MWF", "TR", "MW", "TR"};
+        String[] times = {"8:00", "9:25", "10:50", "12:10", "1:20", "2:45", "4:10"};
+        int nSections = 2_000;
+        int nStudents = 50_000;
+
+        long before = usedMemory();
+        ArrayList<Student> adHoc = new ArrayList<>();
+        for (int s = 0; s < nStudents; s++) {
+            Student student = new Student("Student " + s, "S" + s, 2026 + s % 4);
+            Random random = new Random(s);
+            for (int k = 0; student.getClasses().size() < 5 && k < 50; k++) {
+                int c = random.nextInt(nSections);
+                student.enroll(new Course("Course " + c, "CSC" + c, days[c % 4] + " " + times[c / 4 % 7]));
+            }
+            adHoc.add(student);
+        }
+        long adHocBytes = usedMemory() - before;
+
+        before = usedMemory();
+        CourseCatalog catalog = new CourseCatalog();
+        ArrayList<Student> shared = new ArrayList<>();
+        for (int s = 0; s < nStudents; s++) {
+            Student student = new Student("Student " + s, "S" + s, 2026 + s % 4);
+            Random random = new Random(s);
+            for (int k = 0; student.getClasses().size() < 5 && k < 50; k++) {
+                int c = random.nextInt(nSections);
+                student.enroll(catalog.intern("Course " + c, "CSC" + c, days[c % 4] + " " + times[c / 4 % 7]));
+            }
+            shared.add(student);
+        }
+        long sharedBytes = usedMemory() - before;
+
+        System.out.println(String.format("Ad hoc courses:   %,d Course objects, about %,d KB", nStudents * 5, adHocBytes / 1024));
+        System.out.println(String.format("Catalog courses:  %,d Course objects, about %,d KB (including rosters)",
+                catalog.size(), sharedBytes / 1024));
+        Course csc42 = catalog.get("CSC42");
+        System.out.println(csc42 + " (id " + csc42.getCatalogId() + ") has " + catalog.getRosterSize(csc42)
+                + " students, e.g. " + catalog.getRoster(csc42).get(0).getName());
+        System.out.println(shared.get(0).getName() + " takes " + shared.get(0).getClasses());
+        System.out.println(adHoc.size() + shared.size() + " students enrolled");
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
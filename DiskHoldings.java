@@ -0,0 +1,827 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Holdings kept on disk instead of on the heap, for catalogs bigger than memory.
+ *
+ * The catalog is two files in a directory: catalog.slots, an open-addressing
+ * hash table (linear probing) of fixed 24-byte slots holding each title's
+ * 64-bit hash, where its text is, and its packed (total, available) counts;
+ * and catalog.titles, the title text, appended as titles are added. (Once the
+ * titles file has been compacted it is catalog.titles.N, where N is the
+ * generation recorded in the table's header.)
+ *
+ * Two things stay in memory. A Bloom filter over the title hashes answers
+ * most lookups of titles the library doesn't hold without touching the disk,
+ * and a bounded LRU cache keeps the slot and counts of recently used titles,
+ * so hot titles are checked and checked out without reading the table.
+ * Changes are written straight through to the files.
+ *
+ * Lookups take the shared side of a read/write lock; changes take the
+ * exclusive side, since they rewrite slots on disk. Removed titles leave a
+ * deleted marker in the table (and their text in the titles file) until the
+ * table is next rebuilt. A rebuild also copies the live titles to a fresh
+ * titles file once removed text outweighs them, so churn doesn't grow the
+ * catalog without bound.
+ */
+public class DiskHoldings extends Holdings implements Closeable {
+
+    private static final int MAGIC = 0x4C44534B;         // "LDSK"
+    private static final int TITLES_MAGIC = 0x4C54544C;  // "LTTL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;          // Magic, version, capacity, titles file generation
+    private static final int TITLES_HEADER_BYTES = 8;    // Magic, version; also keeps title offsets above 0
+    private static final int SLOT_BYTES = 24;            // Hash, title reference, packed counts
+    private static final int SCAN_SLOTS = 4_096;         // Slots read at a time when scanning the table
+    private static final long EMPTY = 0L;                // Title reference of a never-used slot
+    private static final long DELETED = -1L;             // Title reference of a removed title's slot
+    private static final int MIN_CAPACITY = 1 << 10;
+    private static final int MAX_CAPACITY = 1 << 26;     // Keeps the table under 2GB so it can be rebuilt through one mapping
+    private static final int BLOOM_BITS_PER_TITLE = 10;  // About a 1% false-positive rate with 7 hashes
+    private static final int BLOOM_HASHES = 7;
+    private static final int DEFAULT_CACHE_TITLES = 10_000;
+
+    private final StampedLock lock = new StampedLock();
+    private final Path directory;
+    private final Path slotFile;
+    private Path titleFile;                              // catalog.titles, or catalog.titles.N once compacted
+    private final LinkedHashMap<String, Cached> cache;   // Least recently used first
+    private FileChannel slots;
+    private FileChannel titles;
+    private int capacity;
+    private int size;
+    private int used;                                    // Slots holding a title or a deleted marker
+    private long titlesEnd;
+    private long liveTitleBytes;                         // Text in the titles file still referenced by a slot
+    private int titlesGeneration;                        // Bumped each time the titles file is compacted
+    private long[] bloom;
+
+    // Stats
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder bloomRejections = new LongAdder();    // Lookups answered "not held" without I/O
+    private final LongAdder bloomFalsePositives = new LongAdder(); // Lookups the filter let through that weren't held
+    private final LongAdder diskReads = new LongAdder();
+    private final LongAdder diskWrites = new LongAdder();
+
+    /* A cached title: where it is in the table and its counts */
+    private static final class Cached {
+        final int slot;
+        long state;
+
+        Cached(int slot, long state) {
+            this.slot = slot;
+            this.state = state;
+        }
+    }
+
+    private DiskHoldings(Path directory, int cacheTitles) throws IOException {
+        super(0);
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.slotFile = directory.resolve("catalog.slots");
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                return size() > cacheTitles;
+            }
+        };
+        boolean exists = Files.exists(slotFile);
+        this.slots = FileChannel.open(slotFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (exists) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(slots, header, 0);
+            this.titlesGeneration = header.getInt(12);
+        }
+        this.titleFile = titlesPath(titlesGeneration);
+        this.titles = FileChannel.open(titleFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (exists) {
+            load();
+        } else {
+            this.capacity = MIN_CAPACITY;
+            this.bloom = new long[bloomWords(capacity)];
+            writeFully(slots, header(capacity, titlesGeneration), 0);
+            writeFully(slots, ByteBuffer.allocate(1), HEADER_BYTES + (long) capacity * SLOT_BYTES - 1); // Zero-filled table
+            writeFully(titles, ByteBuffer.allocate(TITLES_HEADER_BYTES).putInt(TITLES_MAGIC).putInt(VERSION).flip(), 0);
+            this.titlesEnd = TITLES_HEADER_BYTES;
+        }
+    }
+
+    /**
+     * Opens the catalog in a directory, creating an empty one if there is none,
+     * with a cache of 10,000 titles.
+     *
+     * @param directory The directory holding the catalog files
+     * @return The catalog
+     * @throws UncheckedIOException if the files can't be read or created
+     */
+    public static DiskHoldings open(Path directory) {
+        return open(directory, DEFAULT_CACHE_TITLES);
+    }
+
+    /**
+     * Opens the catalog in a directory, creating an empty one if there is none.
+     *
+     * @param directory   The directory holding the catalog files
+     * @param cacheTitles The most titles to keep cached in memory
+     * @return The catalog
+     * @throws UncheckedIOException if the files can't be read or created
+     */
+    public static DiskHoldings open(Path directory, int cacheTitles) {
+        try {
+            return new DiskHoldings(directory, cacheTitles);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the library catalog in " + directory, e);
+        }
+    }
+
+    /* Reads the header, then scans the table to count titles and rebuild the Bloom filter */
+    private void load() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(slots, header, 0);
+        ByteBuffer titlesHeader = ByteBuffer.allocate(TITLES_HEADER_BYTES);
+        readFully(titles, titlesHeader, 0);
+        if (header.getInt(0) != MAGIC || titlesHeader.getInt(0) != TITLES_MAGIC) {
+            throw new IOException(slotFile.getParent() + " doesn't hold a library catalog.");
+        }
+        if (header.getInt(4) != VERSION || titlesHeader.getInt(4) != VERSION) {
+            throw new IOException("Unsupported catalog version " + header.getInt(4) + " in " + slotFile.getParent());
+        }
+        capacity = header.getInt(8);
+        bloom = new long[bloomWords(capacity)];
+        titlesEnd = titles.size();
+        scan((slot, hash, ref, state) -> {
+            used++;
+            if (ref != DELETED) {
+                size++;
+                liveTitleBytes += titleLength(ref);
+                bloomAdd(bloom, hash);
+            }
+        });
+        // A compaction cut short by a crash leaves the other generation's titles file behind
+        if (titlesGeneration > 0) {
+            Files.deleteIfExists(titlesPath(titlesGeneration - 1));
+        }
+        Files.deleteIfExists(titlesPath(titlesGeneration + 1));
+    }
+
+    /**
+     * Adds a title with the given number of copies, all available.
+     *
+     * @param title  The title to add
+     * @param copies The number of copies (at least 1)
+     * @return The new state, or NONE if the title was already held
+     */
+    @Override
+    public long add(String title, int copies) {
+        long stamp = lock.writeLock();
+        try {
+            synchronized (cache) {
+                if (cache.containsKey(title)) {
+                    return NONE;
+                }
+            }
+            byte[] key = title.getBytes(StandardCharsets.UTF_8);
+            long hash = hash(key);
+            long[] state = new long[1];
+            int slot = find(key, hash, state);
+            if (slot >= 0) {
+                return NONE;
+            }
+            insert(~slot, title, key, hash, pack(copies, copies));
+            return pack(copies, copies);
+        } catch (IOException e) {
+            throw failed(e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds more copies of a title that is already held.
+     *
+     * @param title  The title
+     * @param copies The number of copies to add
+     * @return The new state, or NONE if the title isn't held
+     */
+    @Override
+    public long addCopies(String title, int copies) {
+        long stamp = lock.writeLock();
+        try {
+            Cached entry = lookup(title);
+            return entry == null ? NONE : setState(entry, pack(total(entry.state) + copies, available(entry.state) + copies));
+        } catch (IOException e) {
+            throw failed(e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes a title and all its copies.
+     *
+     * @param title The title to remove
+     * @return The title's last state, or NONE if it wasn't held
+     */
+    @Override
+    public long remove(String title) {
+        long stamp = lock.writeLock();
+        try {
+            Cached entry = lookup(title);
+            if (entry == null) {
+                return NONE;
+            }
+            writeFully(slots, ByteBuffer.allocate(8).putLong(0, DELETED), slotOffset(entry.slot) + 8);
+            diskWrites.increment();
+            synchronized (cache) {
+                cache.remove(title);
+            }
+            size--;
+            liveTitleBytes -= title.getBytes(StandardCharsets.UTF_8).length;
+            return entry.state;
+        } catch (IOException e) {
+            throw failed(e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Takes one available copy of a title off the shelf.
+     *
+     * @param title The title
+     * @return The new state, or NONE if the title isn't held or no copy is available
+     */
+    @Override
+    public long checkOut(String title) {
+        long stamp = lock.writeLock();
+        try {
+            Cached entry = lookup(title);
+            return entry == null || available(entry.state) == 0 ? NONE : setState(entry, entry.state - 1);
+        } catch (IOException e) {
+            throw failed(e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Puts one checked-out copy of a title back on the shelf.
+     *
+     * @param title The title
+     * @return The new state, or NONE if the title isn't held or no copy is checked out
+     */
+    @Override
+    public long returnCopy(String title) {
+        long stamp = lock.writeLock();
+        try {
+            Cached entry = lookup(title);
+            return entry == null || available(entry.state) >= total(entry.state) ? NONE : setState(entry, entry.state + 1);
+        } catch (IOException e) {
+            throw failed(e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Looks up a title's current state.
+     *
+     * @param title The title
+     * @return The packed (total, available) state, or NONE if the title isn't held
+     */
+    @Override
+    public long get(String title) {
+        long stamp = lock.readLock();
+        try {
+            Cached entry = lookup(title);
+            return entry == null ? NONE : entry.state;
+        } catch (IOException e) {
+            throw failed(e);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Sets a title's state outright, adding the title if needed. Used when restoring saved state.
+     *
+     * @param title     The title
+     * @param total     Total copies held
+     * @param available Copies on the shelf
+     */
+    @Override
+    public void put(String title, int total, int available) {
+        long stamp = lock.writeLock();
+        try {
+            Cached entry = lookup(title);
+            if (entry != null) {
+                setState(entry, pack(total, available));
+                return;
+            }
+            byte[] key = title.getBytes(StandardCharsets.UTF_8);
+            long hash = hash(key);
+            insert(~find(key, hash, new long[1]), title, key, hash, pack(total, available));
+        } catch (IOException e) {
+            throw failed(e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Does nothing: the table on disk grows as titles are added.
+     *
+     * @param expectedTitles The number of titles expected
+     */
+    @Override
+    public void ensureCapacity(int expectedTitles) {
+    }
+
+    /**
+     * Returns the number of titles held.
+     *
+     * @return The number of titles
+     */
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Calls the visitor for every title held, reading the table in order.
+     * Nothing can be changed while this runs.
+     *
+     * @param visitor The visitor to call
+     */
+    @Override
+    public void forEach(Visitor visitor) {
+        long stamp = lock.readLock();
+        try {
+            scan((slot, hash, ref, state) -> {
+                if (ref != DELETED) {
+                    visitor.visit(new String(readTitle(ref), StandardCharsets.UTF_8), total(state), available(state));
+                }
+            });
+        } catch (IOException e) {
+            throw failed(e);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the directory holding the catalog files.
+     *
+     * @return The directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Flushes every change made so far to disk. Changes are written to the
+     * files as they happen, but the operating system may hold them in memory
+     * until this or close() is called.
+     *
+     * @throws UncheckedIOException if the files can't be flushed
+     */
+    public void sync() {
+        long stamp = lock.readLock(); // Keeps writers out, so the two files agree
+        try {
+            slots.force(true);
+            titles.force(true);
+        } catch (IOException e) {
+            throw failed(e);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Flushes the catalog files to disk and closes them. Closing again does nothing.
+     */
+    @Override
+    public void close() {
+        long stamp = lock.writeLock();
+        try {
+            if (!slots.isOpen()) {
+                return;
+            }
+            slots.force(true);
+            titles.force(true);
+            slots.close();
+            titles.close();
+        } catch (IOException e) {
+            throw failed(e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /* Stats */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getBloomRejections() {
+        return bloomRejections.sum();
+    }
+
+    public long getBloomFalsePositives() {
+        return bloomFalsePositives.sum();
+    }
+
+    public long getDiskReads() {
+        return diskReads.sum();
+    }
+
+    public long getDiskWrites() {
+        return diskWrites.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups answered from the cache.
+     *
+     * @return The cache hit rate, from 0 to 1
+     */
+    public double getCacheHitRate() {
+        long total = lookups.sum();
+        return total == 0 ? 0 : (double) cacheHits.sum() / total;
+    }
+
+    public String toString() {
+        return "DiskHoldings: " + size() + " titles, " + getLookups() + " lookups, "
+                + String.format("%.1f", 100 * getCacheHitRate()) + "% cache hits, " + getBloomRejections()
+                + " answered by the Bloom filter (" + getBloomFalsePositives() + " false positives), "
+                + getDiskReads() + " disk reads, " + getDiskWrites() + " disk writes";
+    }
+
+    /*
+     * Finds a title through the cache, then the Bloom filter, then the table,
+     * caching it if it came from the table. Returns null if it isn't held.
+     * Callers must hold the lock.
+     */
+    private Cached lookup(String title) throws IOException {
+        lookups.increment();
+        synchronized (cache) {
+            Cached entry = cache.get(title);
+            if (entry != null) {
+                cacheHits.increment();
+                return entry;
+            }
+        }
+        byte[] key = title.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(key);
+        if (!bloomMightContain(bloom, hash)) {
+            bloomRejections.increment();
+            return null;
+        }
+        long[] state = new long[1];
+        int slot = find(key, hash, state);
+        if (slot < 0) {
+            bloomFalsePositives.increment();
+            return null;
+        }
+        Cached entry = new Cached(slot, state[0]);
+        synchronized (cache) {
+            cache.put(title, entry);
+        }
+        return entry;
+    }
+
+    /*
+     * Returns the slot holding the title (and its counts in state[0]), or
+     * ~slot of the empty slot where it would go. Callers must hold the lock.
+     */
+    private int find(byte[] key, long hash, long[] state) throws IOException {
+        int mask = capacity - 1;
+        ByteBuffer buffer = ByteBuffer.allocate(SLOT_BYTES);
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            buffer.clear();
+            readFully(slots, buffer, slotOffset(slot));
+            diskReads.increment();
+            long ref = buffer.getLong(8);
+            if (ref == EMPTY) {
+                return ~slot;
+            }
+            if (ref != DELETED && buffer.getLong(0) == hash && titleLength(ref) == key.length
+                    && Arrays.equals(readTitle(ref), key)) {
+                state[0] = buffer.getLong(16);
+                return slot;
+            }
+        }
+    }
+
+    /* Appends the title's text and fills in an empty slot for it. Callers must hold the write lock. */
+    private void insert(int slot, String title, byte[] key, long hash, long state) throws IOException {
+        if (key.length > 0xFFFF) {
+            throw new RuntimeException("Title is too long for the catalog: " + title.substring(0, 40) + "...");
+        }
+        writeFully(titles, ByteBuffer.wrap(key), titlesEnd);
+        long ref = titlesEnd << 16 | key.length;
+        titlesEnd += key.length;
+        writeFully(slots, ByteBuffer.allocate(SLOT_BYTES).putLong(hash).putLong(ref).putLong(state).flip(), slotOffset(slot));
+        diskWrites.add(2);
+        bloomAdd(bloom, hash);
+        size++;
+        used++;
+        liveTitleBytes += key.length;
+        if (used * 2 > capacity) {
+            rebuild(); // Moves every slot; the title is cached again on its next lookup
+            return;
+        }
+        synchronized (cache) {
+            cache.put(title, new Cached(slot, state));
+        }
+    }
+
+    private long setState(Cached entry, long state) throws IOException {
+        writeFully(slots, ByteBuffer.allocate(8).putLong(0, state), slotOffset(entry.slot) + 16);
+        diskWrites.increment();
+        entry.state = state;
+        return state;
+    }
+
+    /*
+     * Writes a fresh table without deleted markers, doubling it until it is at
+     * most a quarter full, and swaps it in. The new table is built through a
+     * memory mapping so re-inserting every title doesn't cost a read per probe.
+     *
+     * If more of the titles file belongs to removed titles than to live ones,
+     * the live titles are also copied to a new titles file of the next
+     * generation, and the new table points into that. The new table's header
+     * names the generation, so until the table is moved into place the old
+     * table and old titles file still agree, and after it they are both
+     * replaced. Callers must hold the write lock.
+     */
+    private void rebuild() throws IOException {
+        int newCapacity = capacity;
+        while (size * 4 > newCapacity) {
+            newCapacity <<= 1;
+        }
+        if (newCapacity > MAX_CAPACITY) {
+            throw new RuntimeException("The catalog can't hold more than " + MAX_CAPACITY / 4 + " titles.");
+        }
+        boolean compact = titlesEnd - TITLES_HEADER_BYTES - liveTitleBytes > liveTitleBytes;
+        int generation = compact ? titlesGeneration + 1 : titlesGeneration;
+        Path newTitleFile = titlesPath(generation);
+        FileChannel newTitles = compact ? FileChannel.open(newTitleFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE) : null;
+        Path temp = slotFile.resolveSibling("catalog.slots.tmp");
+        long[] newBloom = new long[bloomWords(newCapacity)];
+        long[] flushed = {0};                               // Bytes of the new titles file written so far
+        int mask = newCapacity - 1;
+        try {
+            ByteBuffer text = ByteBuffer.allocate(1 << 16); // Copied titles, written out a block at a time
+            if (compact) {
+                text.putInt(TITLES_MAGIC).putInt(VERSION);
+            }
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer table = out.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) newCapacity * SLOT_BYTES);
+                table.put(header(newCapacity, generation));
+                scan((slot, hash, ref, state) -> {
+                    if (ref != DELETED) {
+                        if (compact) {
+                            byte[] title = readTitle(ref);
+                            if (text.remaining() < title.length) {
+                                writeFully(newTitles, text.flip(), flushed[0]);
+                                flushed[0] += text.limit();
+                                text.clear();
+                            }
+                            ref = (flushed[0] + text.position()) << 16 | title.length;
+                            text.put(title);
+                        }
+                        int to = (int) hash & mask;
+                        while (table.getLong(HEADER_BYTES + to * SLOT_BYTES + 8) != EMPTY) {
+                            to = (to + 1) & mask;
+                        }
+                        table.putLong(HEADER_BYTES + to * SLOT_BYTES, hash);
+                        table.putLong(HEADER_BYTES + to * SLOT_BYTES + 8, ref);
+                        table.putLong(HEADER_BYTES + to * SLOT_BYTES + 16, state);
+                        bloomAdd(newBloom, hash);
+                    }
+                });
+                table.force();
+            }
+            if (compact) {
+                writeFully(newTitles, text.flip(), flushed[0]);
+                newTitles.force(true);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (compact) {
+                newTitles.close();
+                Files.deleteIfExists(newTitleFile);
+            }
+            throw e;
+        }
+        // Swap the new table in before letting go of the old one, so a failed move leaves the catalog usable
+        Files.move(temp, slotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel old = slots;
+        slots = FileChannel.open(slotFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        old.close();
+        if (compact) {
+            titles.close();
+            Files.deleteIfExists(titleFile);
+            titles = newTitles;
+            titleFile = newTitleFile;
+            titlesEnd = newTitles.size();
+            titlesGeneration = generation;
+        }
+        capacity = newCapacity;
+        used = size;
+        bloom = newBloom;
+        synchronized (cache) {
+            cache.clear(); // Every cached slot number is stale
+        }
+    }
+
+    /* Receives each occupied slot from scan() */
+    private interface SlotVisitor {
+        void visit(int slot, long hash, long ref, long state) throws IOException;
+    }
+
+    /* Reads the table in order, a few thousand slots at a time, calling the visitor for every non-empty slot */
+    private void scan(SlotVisitor visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_SLOTS * SLOT_BYTES);
+        for (int first = 0; first < capacity; first += SCAN_SLOTS) {
+            int count = Math.min(SCAN_SLOTS, capacity - first);
+            buffer.clear().limit(count * SLOT_BYTES);
+            readFully(slots, buffer, slotOffset(first));
+            diskReads.increment();
+            for (int i = 0; i < count; i++) {
+                long ref = buffer.getLong(i * SLOT_BYTES + 8);
+                if (ref != EMPTY) {
+                    visitor.visit(first + i, buffer.getLong(i * SLOT_BYTES), ref, buffer.getLong(i * SLOT_BYTES + 16));
+                }
+            }
+        }
+    }
+
+    private byte[] readTitle(long ref) throws IOException {
+        byte[] text = new byte[titleLength(ref)];
+        readFully(titles, ByteBuffer.wrap(text), ref >>> 16);
+        diskReads.increment();
+        return text;
+    }
+
+    private static int titleLength(long ref) {
+        return (int) (ref & 0xFFFF);
+    }
+
+    private static long slotOffset(int slot) {
+        return HEADER_BYTES + (long) slot * SLOT_BYTES;
+    }
+
+    private static ByteBuffer header(int capacity, int titlesGeneration) {
+        return ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(titlesGeneration).flip();
+    }
+
+    private Path titlesPath(int generation) {
+        return directory.resolve(generation == 0 ? "catalog.titles" : "catalog.titles." + generation);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("Catalog file ends early at " + position);
+            }
+            position += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private UncheckedIOException failed(IOException e) {
+        return new UncheckedIOException("Library catalog I/O failed in " + slotFile.getParent(), e);
+    }
+
+    /* Bloom filter sized for the most titles a table of this capacity holds */
+    private static int bloomWords(int capacity) {
+        return Math.max(1, (int) ((long) capacity / 2 * BLOOM_BITS_PER_TITLE / 64));
+    }
+
+    private static void bloomAdd(long[] bits, long hash) {
+        long m = bits.length * 64L;
+        long h1 = hash >>> 32;
+        long h2 = (hash & 0xFFFFFFFFL) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = (h1 + i * h2) % m;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private static boolean bloomMightContain(long[] bits, long hash) {
+        long m = bits.length * 64L;
+        long h1 = hash >>> 32;
+        long h2 = (hash & 0xFFFFFFFFL) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = (h1 + i * h2) % m;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* FNV-1a over the UTF-8 bytes, then a 64-bit finalizer so every bit depends on every byte */
+    private static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Loads 200,000 titles into a disk-backed library, then runs a day of
+     * lookups where most checkouts go to a few popular titles and many
+     * searches are for titles the library doesn't have. Prints the cache and
+     * Bloom filter stats, then reopens the catalog to show it persisted.
+     */
+    public static void main(String[] args) {
+        try {
+            demo(200_000);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void demo(int nTitles) throws IOException {
+        Path directory = Files.createTempDirectory("library-catalog");
+        Path list = Files.createTempFile("catalog", ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(list, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < nTitles; i++) {
+                writer.write("Collected Works Volume " + i);
+                writer.newLine();
+            }
+        }
+        Library library = new Library("Depository Library", "1 Storage Way", 1, directory);
+        System.out.println(library.importTitles(list));
+        Files.delete(list);
+        DiskHoldings catalog = library.getDiskHoldings();
+
+        Random random = new Random(7);
+        long readsBefore = catalog.getDiskReads();
+        long startTime = System.nanoTime();
+        int checkedOut = 0;
+        int found = 0;
+        for (int i = 0; i < 200_000; i++) {
+            String popular = "Collected Works Volume " + random.nextInt(1_000);
+            if (library.tryCheckOut(popular)) {
+                checkedOut++;
+                library.tryReturn(popular);
+            }
+            String browsing = random.nextBoolean()
+                    ? "Collected Works Volume " + random.nextInt(nTitles)
+                    : "Uncollected Works Volume " + random.nextInt(nTitles); // Not in the catalog
+            if (library.containsTitle(browsing)) {
+                found++;
+            }
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.println(checkedOut + " checkouts and " + found + " titles found in " + String.format("%.3f", seconds)
+                + "s, " + (catalog.getDiskReads() - readsBefore) + " disk reads");
+        System.out.println(catalog);
+        library.close();
+
+        Library reopened = new Library("Depository Library", "1 Storage Way", 1, directory);
+        System.out.println("Reopened with " + reopened.getDiskHoldings().size() + " titles; search \"volume 199999\": "
+                + reopened.searchTitlesWithAllWords("volume 199999"));
+        reopened.close();
+    }
+}
@@ -0,0 +1,483 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A discrete-event simulation of the elevators in a Building.
+ *
+ * Riders turn up at random (a Poisson stream), each making one of the moves a
+ * visitor can make: goToFloor() to any other floor, or goUp()/goDown() one
+ * floor; half of them start in the lobby. Every move is checked with the
+ * building's own rules before it is simulated. Riders press a hall button,
+ * wait for a car going their way, ride it and get off at their floor.
+ *
+ * Three dispatch policies are available:
+ *  - NEAREST_CAR: each hall call is given to one car when it is made, using
+ *    the classic "figure of suitability" (idle or approaching cars score by
+ *    distance, cars moving away score lowest). Only that car answers it.
+ *  - SCAN: cars sweep all the way to the top and bottom floors while any call
+ *    is waiting, stopping for every call in their direction.
+ *  - LOOK: like SCAN, but a car turns around as soon as nothing is left ahead.
+ *
+ * Events are kept in a binary heap of longs (time in milliseconds in the high
+ * bits, car or arrival in the low bits), so the event loop creates no objects
+ * and simulates millions of trips in a few seconds.
+ */
+public class ElevatorSimulation {
+
+    /** How cars decide which calls to answer */
+    public enum Policy {
+        NEAREST_CAR, SCAN, LOOK
+    }
+
+    private static final long FLOOR_MILLIS = 1_500;  // Time to travel one floor
+    private static final long DOOR_MILLIS = 4_000;   // Doors opening and closing at a stop
+    private static final long BOARD_MILLIS = 1_000;  // Each rider getting on or off
+    private static final int ID_BITS = 16;           // Low bits of an event: which car, or nCars for the next arrival
+    private static final int UP = 0;
+    private static final int DOWN = 1;
+
+    private Building building;
+    private int nFloors;
+    private int nCars;
+    private int carCapacity;
+    private Policy policy;
+
+    // State of one run
+    private int[] carFloor;       // Floor each car is at, or heading to if it is between floors
+    private int[] carDir;         // +1 up, -1 down, 0 idle
+    private boolean[] carBusy;    // Whether the car has an event scheduled
+    private long[] carFreeAt;     // When an idle car's doors finished closing
+    private int[][] riders;       // Riders in each car
+    private int[] load;           // Number of riders in each car
+    private int[][] destinations; // Riders per destination floor, by car
+    private int[][] waiting;      // Riders waiting by floor and direction (index floor * 2 + UP/DOWN), in arrival order
+    private int[] waitingCount;
+    private int[][] calls;        // Waiting riders by floor and direction, per car for NEAREST_CAR or shared (row 0) otherwise
+    private int[] pendingCalls;   // Total of each row of calls
+    private int[] origin;
+    private int[] dest;
+    private long[] arrival;
+    private long[] boarded;
+    private int[] assigned;       // Car each rider's call was given to (NEAREST_CAR)
+    private int[] waits;          // Milliseconds from arriving to boarding, by rider
+    private int[] travels;        // Milliseconds from boarding to getting off, by rider
+    private int delivered;
+    private long[] heap;
+    private int heapSize;
+
+    /**
+     * The outcome of one run.
+     */
+    public static class Report {
+        private Policy policy;
+        private int[] waits;   // Sorted, in milliseconds
+        private int[] travels; // Sorted, in milliseconds
+        private double simulatedHours;
+        private double seconds;
+
+        Report(Policy policy, int[] waits, int[] travels, double simulatedHours, double seconds) {
+            this.policy = policy;
+            this.waits = waits;
+            this.travels = travels;
+            this.simulatedHours = simulatedHours;
+            this.seconds = seconds;
+        }
+
+        public Policy getPolicy() {
+            return this.policy;
+        }
+
+        public int getTrips() {
+            return this.waits.length;
+        }
+
+        public double getMeanWaitSeconds() {
+            return mean(waits);
+        }
+
+        public double getMeanTravelSeconds() {
+            return mean(travels);
+        }
+
+        /**
+         * Returns a percentile of the time riders waited for a car.
+         *
+         * @param fraction the percentile as a fraction, e.g. 0.99
+         * @return the wait in seconds
+         */
+        public double getWaitSeconds(double fraction) {
+            return percentile(waits, fraction);
+        }
+
+        /**
+         * Returns a percentile of the time riders spent in a car.
+         *
+         * @param fraction the percentile as a fraction, e.g. 0.99
+         * @return the ride in seconds
+         */
+        public double getTravelSeconds(double fraction) {
+            return percentile(travels, fraction);
+        }
+
+        public double getSimulatedHours() {
+            return this.simulatedHours;
+        }
+
+        public double getTripsPerSecond() {
+            return getTrips() / seconds;
+        }
+
+        private static double mean(int[] millis) {
+            double total = 0;
+            for (int m : millis) {
+                total += m;
+            }
+            return millis.length == 0 ? 0 : total / millis.length / 1_000;
+        }
+
+        private static double percentile(int[] millis, double fraction) {
+            return millis.length == 0 ? 0 : millis[(int) Math.min(millis.length - 1, fraction * millis.length)] / 1_000.0;
+        }
+
+        public String toString() {
+            return String.format("%-11s %,d trips (%.0f simulated hours, %,.0f trips/sec): wait mean %.1fs p50 %.1fs p95 %.1fs p99 %.1fs,"
+                    + " ride mean %.1fs p50 %.1fs p95 %.1fs p99 %.1fs", policy, getTrips(), simulatedHours, getTripsPerSecond(),
+                    getMeanWaitSeconds(), getWaitSeconds(0.50), getWaitSeconds(0.95), getWaitSeconds(0.99),
+                    getMeanTravelSeconds(), getTravelSeconds(0.50), getTravelSeconds(0.95), getTravelSeconds(0.99));
+        }
+    }
+
+    /**
+     * Constructs a simulation of a building's elevators.
+     *
+     * @param building    the building, which must have an elevator and at least two floors
+     * @param nCars       the number of elevator cars
+     * @param carCapacity the most riders a car holds
+     * @param policy      how cars answer calls
+     * @throws RuntimeException if the building has no elevator or the cars are invalid
+     */
+    public ElevatorSimulation(Building building, int nCars, int carCapacity, Policy policy) {
+        if (!building.hasElevator()) {
+            throw new RuntimeException(building.getName() + " doesn't have an elevator to simulate.");
+        }
+        if (building.getFloors() < 2) {
+            throw new RuntimeException(building.getName() + " has only one floor, so its elevator never moves.");
+        }
+        if (nCars < 1 || nCars >= (1 << ID_BITS) - 1 || carCapacity < 1) {
+            throw new RuntimeException("Cannot simulate " + nCars + " cars holding " + carCapacity + " riders each.");
+        }
+        this.building = building;
+        this.nFloors = building.getFloors();
+        this.nCars = nCars;
+        this.carCapacity = carCapacity;
+        this.policy = policy;
+    }
+
+    /**
+     * Overloaded constructor for cars that hold 12 riders.
+     *
+     * @param building the building, which must have an elevator
+     * @param nCars    the number of elevator cars
+     * @param policy   how cars answer calls
+     */
+    public ElevatorSimulation(Building building, int nCars, Policy policy) {
+        this(building, nCars, 12, policy);
+    }
+
+    /**
+     * Simulates a number of trips and reports how long riders waited and rode.
+     *
+     * @param trips          the number of trips
+     * @param tripsPerMinute how often riders turn up, on average
+     * @param seed           the traffic seed; the same seed gives the same traffic for every policy
+     * @return wait and ride time distributions
+     */
+    public Report run(int trips, double tripsPerMinute, long seed) {
+        long startTime = System.nanoTime();
+        generateTraffic(trips, tripsPerMinute, seed);
+        reset(trips);
+        int next = 0;
+        if (trips > 0) {
+            schedule(arrival[0], nCars);
+        }
+        long now = 0;
+        while (heapSize > 0) {
+            long event = pop();
+            now = event >>> ID_BITS;
+            int id = (int) (event & ((1 << ID_BITS) - 1));
+            if (id == nCars) {
+                arrive(next++, now);
+                if (next < trips) {
+                    schedule(arrival[next], nCars);
+                }
+            } else {
+                stop(id, now);
+            }
+        }
+        if (delivered != trips) {
+            throw new RuntimeException("Elevator simulation stalled with " + (trips - delivered) + " riders undelivered.");
+        }
+        int[] sortedWaits = waits.clone();
+        int[] sortedTravels = travels.clone();
+        Arrays.sort(sortedWaits);
+        Arrays.sort(sortedTravels);
+        return new Report(policy, sortedWaits, sortedTravels, now / 3_600_000.0, (System.nanoTime() - startTime) / 1e9);
+    }
+
+    /* Riders, their moves and when they turn up */
+    private void generateTraffic(int trips, double tripsPerMinute, long seed) {
+        Random random = new Random(seed);
+        origin = new int[trips];
+        dest = new int[trips];
+        arrival = new long[trips];
+        double meanGapMillis = 60_000 / tripsPerMinute;
+        double time = 0;
+        for (int p = 0; p < trips; p++) {
+            time += -Math.log(1 - random.nextDouble()) * meanGapMillis;
+            arrival[p] = (long) time;
+            int from = random.nextBoolean() ? 1 : 1 + random.nextInt(nFloors);
+            int to;
+            double move = random.nextDouble();
+            if (move < 0.6) { // goToFloor(n)
+                to = 1 + random.nextInt(nFloors - 1);
+                if (to >= from) {
+                    to++;
+                }
+            } else if (move < 0.8) { // goUp()
+                to = from == nFloors ? from - 1 : from + 1;
+            } else { // goDown()
+                to = from == 1 ? from + 1 : from - 1;
+            }
+            building.checkMove(from, to);
+            origin[p] = from;
+            dest[p] = to;
+        }
+    }
+
+    private void reset(int trips) {
+        carFloor = new int[nCars];
+        Arrays.fill(carFloor, 1);
+        carDir = new int[nCars];
+        carBusy = new boolean[nCars];
+        carFreeAt = new long[nCars];
+        riders = new int[nCars][carCapacity];
+        load = new int[nCars];
+        destinations = new int[nCars][nFloors + 1];
+        waiting = new int[(nFloors + 1) * 2][16];
+        waitingCount = new int[(nFloors + 1) * 2];
+        int rows = policy == Policy.NEAREST_CAR ? nCars : 1;
+        calls = new int[rows][(nFloors + 1) * 2];
+        pendingCalls = new int[rows];
+        boarded = new long[trips];
+        assigned = new int[trips];
+        waits = new int[trips];
+        travels = new int[trips];
+        delivered = 0;
+        heap = new long[nCars + 2];
+        heapSize = 0;
+    }
+
+    /* A rider presses the hall button */
+    private void arrive(int p, long now) {
+        int f = origin[p];
+        int slot = f * 2 + (dest[p] > f ? UP : DOWN);
+        if (waitingCount[slot] == waiting[slot].length) {
+            waiting[slot] = Arrays.copyOf(waiting[slot], waiting[slot].length * 2);
+        }
+        waiting[slot][waitingCount[slot]++] = p;
+        int car;
+        if (policy == Policy.NEAREST_CAR) {
+            car = mostSuitableCar(f, dest[p] > f ? 1 : -1);
+            assigned[p] = car;
+            calls[car][slot]++;
+            pendingCalls[car]++;
+        } else {
+            calls[0][slot]++;
+            pendingCalls[0]++;
+            car = nearestIdleCar(f);
+        }
+        if (car >= 0 && !carBusy[car]) {
+            carBusy[car] = true;
+            schedule(Math.max(now, carFreeAt[car]), car);
+        }
+    }
+
+    /* NEAREST_CAR: the car with the best figure of suitability for a call */
+    private int mostSuitableCar(int floor, int callDir) {
+        int best = 0;
+        int bestScore = Integer.MIN_VALUE;
+        for (int c = 0; c < nCars; c++) {
+            int distance = Math.abs(carFloor[c] - floor);
+            int score;
+            if (carDir[c] == 0) {
+                score = nFloors - distance;
+            } else if ((floor - carFloor[c]) * carDir[c] >= 0) { // Approaching the call
+                score = carDir[c] == callDir ? nFloors + 1 - distance : nFloors - distance;
+            } else {
+                score = 1;
+            }
+            if (score > bestScore || (score == bestScore && load[c] < load[best])) {
+                best = c;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /* SCAN and LOOK: the idle car closest to a call, or -1 if every car is busy */
+    private int nearestIdleCar(int floor) {
+        int best = -1;
+        for (int c = 0; c < nCars; c++) {
+            if (!carBusy[c] && (best < 0 || Math.abs(carFloor[c] - floor) < Math.abs(carFloor[best] - floor))) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /* A car reaches a floor: riders get off, the car picks a direction, riders get on */
+    private void stop(int car, long now) {
+        carBusy[car] = false;
+        int f = carFloor[car];
+        int moved = 0;
+        if (destinations[car][f] > 0) {
+            int kept = 0;
+            for (int i = 0; i < load[car]; i++) {
+                int p = riders[car][i];
+                if (dest[p] == f) {
+                    travels[p] = (int) (now - boarded[p]);
+                    delivered++;
+                    moved++;
+                } else {
+                    riders[car][kept++] = p;
+                }
+            }
+            load[car] = kept;
+            destinations[car][f] = 0;
+        }
+        int dir = chooseDirection(car, f);
+        if (dir != 0) {
+            moved += board(car, f, dir, now);
+        }
+        long leave = now + (moved > 0 ? DOOR_MILLIS + BOARD_MILLIS * moved : 0);
+        carDir[car] = dir;
+        if (dir == 0) {
+            carFreeAt[car] = leave;
+            return;
+        }
+        carFloor[car] = f + dir;
+        carBusy[car] = true;
+        schedule(leave + FLOOR_MILLIS, car);
+    }
+
+    private int chooseDirection(int car, int f) {
+        int row = policy == Policy.NEAREST_CAR ? car : 0;
+        int dir = carDir[car];
+        if (dir != 0) {
+            boolean keepGoing = policy == Policy.SCAN
+                    ? f + dir >= 1 && f + dir <= nFloors && (load[car] > 0 || pendingCalls[row] > 0)
+                    : workAhead(car, row, f, dir);
+            if (keepGoing || calls[row][f * 2 + (dir > 0 ? UP : DOWN)] > 0) {
+                return dir;
+            }
+            if (calls[row][f * 2 + (dir > 0 ? DOWN : UP)] > 0 || workAhead(car, row, f, -dir)) {
+                return -dir;
+            }
+            return 0;
+        }
+        if (calls[row][f * 2 + UP] > 0) {
+            return 1;
+        }
+        if (calls[row][f * 2 + DOWN] > 0) {
+            return -1;
+        }
+        if (workAhead(car, row, f, 1)) {
+            return 1;
+        }
+        return workAhead(car, row, f, -1) ? -1 : 0;
+    }
+
+    /* Whether the car has a rider to drop off or a call to answer beyond this floor */
+    private boolean workAhead(int car, int row, int f, int dir) {
+        for (int g = f + dir; g >= 1 && g <= nFloors; g += dir) {
+            if (destinations[car][g] > 0 || calls[row][g * 2 + UP] > 0 || calls[row][g * 2 + DOWN] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Riders waiting here to go the car's way get on, in the order they arrived, until it is full */
+    private int board(int car, int f, int dir, long now) {
+        int slot = f * 2 + (dir > 0 ? UP : DOWN);
+        int row = policy == Policy.NEAREST_CAR ? car : 0;
+        int[] queue = waiting[slot];
+        int kept = 0;
+        int count = 0;
+        for (int i = 0; i < waitingCount[slot]; i++) {
+            int p = queue[i];
+            if (load[car] < carCapacity && (policy != Policy.NEAREST_CAR || assigned[p] == car)) {
+                boarded[p] = now;
+                waits[p] = (int) (now - arrival[p]);
+                riders[car][load[car]++] = p;
+                destinations[car][dest[p]]++;
+                calls[row][slot]--;
+                pendingCalls[row]--;
+                count++;
+            } else {
+                queue[kept++] = p;
+            }
+        }
+        waitingCount[slot] = kept;
+        return count;
+    }
+
+    /* Event heap */
+    private void schedule(long time, int id) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heap.length * 2);
+        }
+        long event = time << ID_BITS | id;
+        int i = heapSize++;
+        while (i > 0 && heap[(i - 1) >>> 1] > event) {
+            heap[i] = heap[(i - 1) >>> 1];
+            i = (i - 1) >>> 1;
+        }
+        heap[i] = event;
+    }
+
+    private long pop() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+
+    /**
+     * Compares the three policies on a busy 12-floor library with four cars.
+     */
+    public static void main(String[] args) {
+        Library library = new Library("Neilson Library", "7 Neilson Drive, Northampton, MA", 12);
+        int trips = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        for (Policy policy : Policy.values()) {
+            System.out.println(new ElevatorSimulation(library, 4, policy).run(trips, 12, 2025L));
+        }
+        House ziskind = new House("Ziskind House", "1 Henshaw Ave, Northampton, MA", 4, true, true);
+        System.out.println(new ElevatorSimulation(ziskind, 1, Policy.LOOK).run(100_000, 2, 2025L));
+    }
+}
@@ -0,0 +1,5 @@
+interface EventSink {
+
+    /* Receives one event. Implementations must not block for long: this runs on the caller's thread. */
+    void accept(EventType type, Object source, String text, int a, int b, int c);
+}
@@ -0,0 +1,64 @@
+/**
+ * The kinds of events buildings and the campus map report to the current EventSink.
+ * Each event carries a source object, one piece of text (a name or title) and up
+ * to three numbers; format() turns them into the message the console shows.
+ */
+public enum EventType {
+
+    BUILDING_ADDED, BUILDING_REMOVED,                    // CampusMap; text = building name
+    ENTERED, EXITED, FLOOR_CHANGED,                      // Building; text = building name, a = floor
+    TITLE_ADDED, TITLE_EXISTS, TITLE_REMOVED, TITLE_NOT_FOUND,
+    CHECKED_OUT, CHECK_OUT_FAILED, RETURNED, RETURN_FAILED, // Library; text = title
+    COFFEE_SOLD,                                         // Cafe; a = ounces, b = sugar packets, c = creams
+    RESTOCKING,                                          // Cafe; text = the item that ran short
+    MOVED_IN;                                            // House; text = student name
+
+    /**
+     * Builds the console message for an event of this type.
+     *
+     * @param source the object that reported the event
+     * @param text   the event's text
+     * @param a      the event's first number
+     * @param b      the event's second number
+     * @param c      the event's third number
+     * @return the message
+     */
+    public String format(Object source, String text, int a, int b, int c) {
+        switch (this) {
+            case BUILDING_ADDED:
+                return "Adding building...\n-->Successfully added " + text + " to the map.";
+            case BUILDING_REMOVED:
+                return "Removing building...\n-->Successfully removed " + text + " from the map.";
+            case ENTERED:
+                return "You are now inside " + text + " on the ground floor.";
+            case EXITED:
+                return "You have left " + text + ".";
+            case FLOOR_CHANGED:
+                return "You are now on floor #" + a + " of " + text;
+            case TITLE_ADDED:
+                return "Title added: " + text;
+            case TITLE_EXISTS:
+                return "Title already exists: " + text;
+            case TITLE_REMOVED:
+                return "Title removed: " + text;
+            case TITLE_NOT_FOUND:
+                return "Title not found: " + text;
+            case CHECKED_OUT:
+                return "Checked out: " + text;
+            case CHECK_OUT_FAILED:
+                return "Cannot check out: " + text + " (Not available or doesn't exist)";
+            case RETURNED:
+                return "Returned: " + text;
+            case RETURN_FAILED:
+                return "Cannot return: " + text + " (Not checked out or not found in collection)";
+            case COFFEE_SOLD:
+                return "Coffee sold! Size: " + a + " ounces, Sugar: " + b + " packets, Cream: " + c + " packets.";
+            case RESTOCKING:
+                return "Unable to sell coffee. Not enough inventory.\nNot enough " + text + ". Restocking...";
+            case MOVED_IN:
+                return text + " has moved in.";
+            default:
+                return name() + ": " + text;
+        }
+    }
+}
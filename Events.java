@@ -0,0 +1,52 @@
+/**
+ * Where buildings and the campus map send their events instead of printing.
+ *
+ * Callers hand over the pieces of an event (a type, the source object, a name
+ * or title they already hold, and numbers) rather than a finished message, so
+ * nothing is formatted or allocated unless the current sink wants it. The
+ * default sink prints exactly what the classes used to print.
+ */
+public class Events {
+
+    /** Prints each event to System.out as it happens (the default). */
+    public static final EventSink CONSOLE = (type, source, text, a, b, c) -> System.out.println(type.format(source, text, a, b, c));
+
+    /** Ignores every event. */
+    public static final EventSink SILENT = (type, source, text, a, b, c) -> { };
+
+    private static volatile EventSink sink = CONSOLE;
+
+    private Events() {
+    }
+
+    /**
+     * Sends all later events to the given sink.
+     *
+     * @param newSink the sink to use, e.g. CONSOLE, SILENT or an AsyncEventSink
+     */
+    public static void setSink(EventSink newSink) {
+        sink = newSink;
+    }
+
+    /**
+     * Returns the sink events currently go to.
+     *
+     * @return the current sink
+     */
+    public static EventSink getSink() {
+        return sink;
+    }
+
+    /* Reports an event to the current sink */
+    static void emit(EventType type, Object source, String text) {
+        sink.accept(type, source, text, 0, 0, 0);
+    }
+
+    static void emit(EventType type, Object source, String text, int a) {
+        sink.accept(type, source, text, a, 0, 0);
+    }
+
+    static void emit(EventType type, Object source, String text, int a, int b, int c) {
+        sink.accept(type, source, text, a, b, c);
+    }
+}
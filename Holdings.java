@@ -0,0 +1,432 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A compact table of how many copies of each title a Library holds and how
+ * many of those are on the shelf.
+ *
+ * Titles live in an open-addressing hash table (linear probing): one array of
+ * titles and one array of counts, where each count packs the total number of
+ * copies (high 32 bits) and the available copies (low 32 bits) into a single
+ * long. There is no per-title entry object and no boxed value, and because both
+ * counts share one long, checking out or returning a copy is a single
+ * compare-and-set.
+ *
+ * Adding and removing titles (and growing the table) take a write lock.
+ * Lookups, checkouts and returns don't write to the lock at all: they read
+ * under an optimistic stamp and only fall back to the read lock if a writer
+ * got in the way. That is safe because a slot of a table never changes
+ * owner. A removed title leaves a tombstone rather than shifting its
+ * neighbours back, and tombstones are only cleared by moving everything to a
+ * new table. A slot with no live title, and every slot of a table that has
+ * been replaced, holds MOVED in its count, so a compare-and-set aimed at a
+ * title that is no longer there fails instead of landing on another title.
+ */
+public class Holdings {
+
+    /** Returned by the operations below when the title isn't held or the change isn't possible. */
+    public static final long NONE = -1L;
+
+    private static final long MOVED = Long.MIN_VALUE;            // Count of a slot with no live title
+    private static final String TOMBSTONE = new String("");      // Title of a slot whose title was removed; compared by identity
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final StampedLock lock = new StampedLock();
+    private volatile Table table;
+    private int size;                 // Live titles; guarded by the write lock
+    private int tombstones;           // Slots of removed titles; guarded by the write lock
+
+    /* One generation of the table; replaced as a whole when it grows */
+    private static final class Table {
+        final String[] titles;         // Slot -> title, TOMBSTONE, or null if the slot was never used
+        final AtomicLongArray counts;  // Slot -> packed (total, available), or MOVED
+
+        Table(int capacity) {
+            titles = new String[capacity];
+            long[] empty = new long[capacity];
+            Arrays.fill(empty, MOVED);
+            counts = new AtomicLongArray(empty);
+        }
+
+        /* Returns the slot holding the title, or ~slot of the empty slot where it would go */
+        int find(String title) {
+            int mask = titles.length - 1;
+            int slot = spread(title.hashCode()) & mask;
+            String held;
+            while ((held = titles[slot]) != null) {
+                if (held != TOMBSTONE && held.equals(title)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return ~slot;
+        }
+    }
+
+    /**
+     * Constructs an empty table.
+     */
+    public Holdings() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty table sized to hold the given number of titles without growing.
+     *
+     * @param expectedTitles The number of titles expected
+     */
+    public Holdings(int expectedTitles) {
+        table = new Table(capacityFor(MIN_CAPACITY, expectedTitles));
+    }
+
+    /* Packing helpers */
+    static long pack(int total, int available) {
+        return ((long) total << 32) | (available & 0xFFFFFFFFL);
+    }
+
+    static int total(long state) {
+        return (int) (state >>> 32);
+    }
+
+    static int available(long state) {
+        return (int) state;
+    }
+
+    /**
+     * Adds a title with the given number of copies, all available.
+     *
+     * @param title  The title to add
+     * @param copies The number of copies (at least 1)
+     * @return The new state, or NONE if the title was already held
+     */
+    public long add(String title, int copies) {
+        long stamp = lock.writeLock();
+        try {
+            if (table.find(title) >= 0) {
+                return NONE;
+            }
+            insert(title, pack(copies, copies));
+            return pack(copies, copies);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds more copies of a title that is already held.
+     *
+     * @param title  The title
+     * @param copies The number of copies to add
+     * @return The new state, or NONE if the title isn't held
+     */
+    public long addCopies(String title, int copies) {
+        return update(title, state -> pack(total(state) + copies, available(state) + copies));
+    }
+
+    /**
+     * Removes a title and all its copies.
+     *
+     * @param title The title to remove
+     * @return The title's last state, or NONE if it wasn't held
+     */
+    public long remove(String title) {
+        long stamp = lock.writeLock();
+        try {
+            Table current = table;
+            int slot = current.find(title);
+            if (slot < 0) {
+                return NONE;
+            }
+            long state = current.counts.getAndSet(slot, MOVED); // Includes any checkout that raced the lock
+            current.titles[slot] = TOMBSTONE;
+            size--;
+            tombstones++;
+            return state;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Takes one available copy of a title off the shelf.
+     *
+     * @param title The title
+     * @return The new state, or NONE if the title isn't held or no copy is available
+     */
+    public long checkOut(String title) {
+        return update(title, state -> available(state) == 0 ? NONE : state - 1);
+    }
+
+    /**
+     * Puts one checked-out copy of a title back on the shelf.
+     *
+     * @param title The title
+     * @return The new state, or NONE if the title isn't held or no copy is checked out
+     */
+    public long returnCopy(String title) {
+        return update(title, state -> available(state) >= total(state) ? NONE : state + 1);
+    }
+
+    /**
+     * Looks up a title's current state.
+     *
+     * @param title The title
+     * @return The packed (total, available) state, or NONE if the title isn't held
+     */
+    public long get(String title) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            Table current = table;
+            int slot = current.find(title);
+            if (slot >= 0) {
+                long state = current.counts.get(slot);
+                if (state != MOVED) {
+                    return state;
+                }
+            } else if (lock.validate(stamp)) {
+                return NONE;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            Table current = table;
+            int slot = current.find(title);
+            return slot < 0 ? NONE : current.counts.get(slot);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Sets a title's state outright, adding the title if needed. Used when restoring saved state.
+     *
+     * @param title     The title
+     * @param total     Total copies held
+     * @param available Copies on the shelf
+     */
+    public void put(String title, int total, int available) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = table.find(title);
+            if (slot < 0) {
+                insert(title, pack(total, available));
+            } else {
+                table.counts.set(slot, pack(total, available));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Grows the table, if needed, so it can hold the given number of titles
+     * without growing again. Used before restoring a saved collection.
+     *
+     * @param expectedTitles The number of titles expected
+     */
+    public void ensureCapacity(int expectedTitles) {
+        long stamp = lock.writeLock();
+        try {
+            int capacity = capacityFor(table.titles.length, expectedTitles);
+            if (capacity > table.titles.length) {
+                resize(capacity);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of titles held.
+     *
+     * @return The number of titles
+     */
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int titles = size;
+        if (lock.validate(stamp)) {
+            return titles;
+        }
+        stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Receives each title and its counts from forEach().
+     */
+    public interface Visitor {
+        void visit(String title, int total, int available);
+    }
+
+    /**
+     * Calls the visitor for every title held. Titles can't be added or removed
+     * while this runs; checkouts and returns can.
+     *
+     * @param visitor The visitor to call
+     */
+    public void forEach(Visitor visitor) {
+        long stamp = lock.readLock();
+        try {
+            Table current = table;
+            for (int slot = 0; slot < current.titles.length; slot++) {
+                String title = current.titles[slot];
+                if (title != null && title != TOMBSTONE) {
+                    long state = current.counts.get(slot);
+                    visitor.visit(title, total(state), available(state));
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /*
+     * Applies a change to a title's counts with a compare-and-set. The change
+     * returns the new state, or NONE to leave the counts alone. Runs under an
+     * optimistic stamp first; a title that seems missing is only believed if
+     * no writer ran meanwhile, and a count of MOVED means a writer vacated the
+     * slot, so both retry under the read lock.
+     */
+    private long update(String title, LongUnaryOperator change) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            Table current = table;
+            int slot = current.find(title);
+            if (slot >= 0) {
+                long result = apply(current.counts, slot, change);
+                if (result != MOVED) {
+                    return result;
+                }
+            } else if (lock.validate(stamp)) {
+                return NONE;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            Table current = table;
+            int slot = current.find(title);
+            return slot < 0 ? NONE : apply(current.counts, slot, change);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /* The compare-and-set loop behind update(); MOVED if the slot no longer holds its title */
+    private static long apply(AtomicLongArray counts, int slot, LongUnaryOperator change) {
+        while (true) {
+            long state = counts.get(slot);
+            if (state == MOVED) {
+                return MOVED;
+            }
+            long next = change.applyAsLong(state);
+            if (next == NONE) {
+                return NONE;
+            }
+            if (counts.compareAndSet(slot, state, next)) {
+                return next;
+            }
+        }
+    }
+
+    /*
+     * Puts a title that isn't held into a never-used slot, first moving to a
+     * new table if live titles and tombstones would pass the load factor.
+     * Callers must hold the write lock.
+     */
+    private void insert(String title, long state) {
+        int capacity = table.titles.length;
+        if (size + tombstones + 1 > capacity * LOAD_FACTOR) {
+            resize(size + 1 > capacity * LOAD_FACTOR / 2 ? capacity << 1 : capacity); // Mostly tombstones: just sweep them
+        }
+        Table current = table;
+        int slot = ~current.find(title);
+        current.titles[slot] = title;
+        current.counts.set(slot, state); // After the title, so a reader that finds it early sees MOVED and retries
+        size++;
+    }
+
+    /*
+     * Moves every live title into a new table of the given capacity, dropping
+     * tombstones. Each old count is swapped for MOVED as it is copied, so a
+     * checkout still working on the old table either lands before the copy
+     * or fails and retries. Callers must hold the write lock.
+     */
+    private void resize(int capacity) {
+        Table old = table;
+        Table grown = new Table(capacity);
+        for (int i = 0; i < old.titles.length; i++) {
+            String title = old.titles[i];
+            if (title != null && title != TOMBSTONE) {
+                int slot = ~grown.find(title);
+                grown.titles[slot] = title;
+                grown.counts.set(slot, old.counts.getAndSet(i, MOVED));
+            }
+        }
+        tombstones = 0;
+        table = grown;
+    }
+
+    /* The smallest power of two at least the given capacity that holds the titles within the load factor */
+    private static int capacityFor(int capacity, int expectedTitles) {
+        while (capacity * LOAD_FACTOR < expectedTitles) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /*
+     * Titles that differ only in their last few characters ("Volume 1",
+     * "Volume 2", ...) get String hashes that differ only in a few bits, which
+     * linear probing turns into long runs. Multiplying by a large odd constant
+     * spreads those differences over the whole word before masking.
+     */
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Compares the heap used per title by this table and by the map of
+     * availability flags Library used before.
+     */
+    public static void main(String[] args) {
+        int n = 1_000_000;
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) {
+            names[i] = "Title " + i; // Shared by both structures, so not counted
+        }
+
+        long before = usedMemory();
+        ConcurrentHashMap<String, Boolean> flags = new ConcurrentHashMap<>();
+        for (String name : names) {
+            flags.put(name, true);
+        }
+        long mapBytes = usedMemory() - before;
+
+        before = usedMemory();
+        Holdings holdings = new Holdings();
+        for (String name : names) {
+            holdings.add(name, 1);
+        }
+        long holdingsBytes = usedMemory() - before;
+
+        System.out.println("Map of flags: " + (mapBytes / n) + " bytes per title (" + flags.size() + " titles)");
+        System.out.println("Holdings:     " + (holdingsBytes / n) + " bytes per title (" + holdings.size() + " titles, with copy counts)");
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -1,15 +1,18 @@
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
  * Represents a House that extends Building and implements HouseRequirements.
  * A House can have multiple residents and contains a dining room.
  */
-public class House extends Building {
+public class House extends Building implements HouseRequirements {
 
     // House specific attributes
-    private ArrayList<Student> residents; // List to store residents
+    private LinkedHashMap<String, Student> residents; // Residents by student id, in move-in order
     private boolean hasDiningRoom;         // Whether the house has a dining room
     private boolean hasElevator;           // Whether the house has an elevator
+    private int capacity;                  // Maximum number of residents
 
     /**
      * Overloaded constructor — simpler case where the house does not have a dining room or elevator.
@@ -21,7 +24,8 @@ public class House extends Building {
         super(name, address, 1); // Calls the superclass constructor for a single-floor house
         this.hasDiningRoom = false; // Default value for dining room
         this.hasElevator = false;   // Default value for elevator
-        this.residents = new ArrayList<>(); // Initializes the list of residents
+        this.capacity = Integer.MAX_VALUE; // No limit unless one is given
+        this.residents = new LinkedHashMap<>(); // Initializes the registry of residents
     }
 
     /**
@@ -34,10 +38,28 @@ public class House extends Building {
      * @param hasElevator   indicates whether the house has an elevator
      */
     public House(String name, String address, int nFloors, boolean hasDiningRoom, boolean hasElevator) {
+        this(name, address, nFloors, hasDiningRoom, hasElevator, Integer.MAX_VALUE); // No limit on residents
+    }
+
+    /**
+     * Overloaded constructor for a house that can only hold a limited number of residents.
+     *
+     * @param name          the name of the house
+     * @param address       the address of the house
+     * @param nFloors       the number of floors in the house
+     * @param hasDiningRoom indicates whether the house has a dining room
+     * @param hasElevator   indicates whether the house has an elevator
+     * @param capacity      the maximum number of residents
+     */
+    public House(String name, String address, int nFloors, boolean hasDiningRoom, boolean hasElevator, int capacity) {
         super(name, address, nFloors); // Calls the superclass constructor
+        if (capacity < 0) {
+            throw new RuntimeException("Cannot construct a house with a negative capacity.");
+        }
         this.hasDiningRoom = hasDiningRoom;
         this.hasElevator = hasElevator;
-        this.residents = new ArrayList<>(); // Initializes the list of residents
+        this.capacity = capacity;
+        this.residents = new LinkedHashMap<>(); // Initializes the registry of residents
     }
 
     /**
@@ -49,6 +71,24 @@ public class House extends Building {
         return this.hasDiningRoom;
     }
 
+    /**
+     * Checks if the house has an elevator.
+     *
+     * @return true if the house has an elevator, false otherwise
+     */
+    public boolean hasElevator() {
+        return this.hasElevator;
+    }
+
+    /**
+     * Returns the maximum number of residents the house can hold.
+     *
+     * @return the capacity of the house
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
     /**
      * Returns the number of residents in the house.
      *
@@ -58,19 +98,81 @@ public class House extends Building {
         return this.residents.size();
     }
 
+    /**
+     * Returns the number of residents in the house (as required by HouseRequirements).
+     *
+     * @return the number of residents
+     */
+    public int nResidents() {
+        return getResidentCount();
+    }
+
+    /**
+     * Returns the residents of the house, in the order they moved in.
+     *
+     * @return a copy of the list of residents
+     */
+    public List<Student> getResidents() {
+        return new ArrayList<>(this.residents.values());
+    }
+
+    /** The outcome of a non-throwing housing method such as tryMoveIn() */
+    public enum HousingResult {
+        MOVED_IN, MOVED_OUT, ALREADY_RESIDENT, NOT_RESIDENT, HOUSE_FULL
+    }
+
     /**
      * Moves a student into the house, if not already a resident.
      *
      * @param s the student to move in
-     * @throws RuntimeException if the student is already a resident
+     * @throws RuntimeException if the student is already a resident or the house is full
      */
     public void moveIn(Student s) {
-        if (!residents.contains(s)) { // Check if the student is already in the house
-            residents.add(s); // Add the student to the house
-            System.out.println(s.getName() + " has moved in.");
-        } else {
-            throw new RuntimeException("The student is already in this house and cannot move in. Please try another house!");
+        switch (tryMoveIn(s)) {
+            case MOVED_IN:
+                Events.emit(EventType.MOVED_IN, this, s.getName());
+                return;
+            case HOUSE_FULL:
+                throw new RuntimeException(this.name + " is full and cannot take another resident. Please try another house!");
+            default:
+                throw new RuntimeException("The student is already in this house and cannot move in. Please try another house!");
+        }
+    }
+
+    /**
+     * Moves a student in without throwing or printing anything.
+     *
+     * @param s the student to move in
+     * @return MOVED_IN, ALREADY_RESIDENT or HOUSE_FULL
+     */
+    public HousingResult tryMoveIn(Student s) {
+        if (residents.containsKey(s.getId())) {
+            return HousingResult.ALREADY_RESIDENT;
+        }
+        if (residents.size() >= capacity) {
+            return HousingResult.HOUSE_FULL;
+        }
+        residents.put(s.getId(), s);
+        return HousingResult.MOVED_IN;
+    }
+
+    /**
+     * Moves a group of students in at once without printing anything, as used by
+     * HousingLottery. Students who are already residents are skipped.
+     *
+     * @param students the students to move in
+     * @return the number of students who moved in
+     * @throws RuntimeException if the group doesn't fit in the house
+     */
+    public int moveInAll(List<Student> students) {
+        if ((long) residents.size() + students.size() > capacity) {
+            throw new RuntimeException(this.name + " doesn't have room for " + students.size() + " more residents.");
+        }
+        int before = residents.size();
+        for (Student s : students) {
+            residents.putIfAbsent(s.getId(), s);
         }
+        return residents.size() - before;
     }
 
     /**
@@ -79,7 +181,7 @@ public class House extends Building {
      * @param name the name of the student to move in
      */
     public void moveIn(String name) {
-        Student s = new Student(name, "N/A", 0); // Create a student with dummy data
+        Student s = new Student(name, "N/A " + name, 0); // Create a student with dummy data (id derived from the name)
         moveIn(s); // Call the original moveIn method
     }
 
@@ -91,12 +193,21 @@ public class House extends Building {
      * @throws RuntimeException if the student is not a resident of the house
      */
     public Student moveOut(Student s) {
-        if (residents.contains(s)) {
-            residents.remove(s); // Remove the student from the house
-            return s;
-        } else {
+        Student resident = residents.get(s.getId());
+        if (tryMoveOut(s) != HousingResult.MOVED_OUT) {
             throw new RuntimeException("The student is not in this house and cannot move out.");
         }
+        return resident;
+    }
+
+    /**
+     * Moves a student out without throwing.
+     *
+     * @param s the student to move out
+     * @return MOVED_OUT, or NOT_RESIDENT if the student doesn't live here
+     */
+    public HousingResult tryMoveOut(Student s) {
+        return residents.remove(s.getId()) != null ? HousingResult.MOVED_OUT : HousingResult.NOT_RESIDENT;
     }
 
     /**
@@ -106,7 +217,7 @@ public class House extends Building {
      * @return true if the student is a resident, false otherwise
      */
     public boolean isResident(Student s) {
-        return residents.contains(s);
+        return residents.containsKey(s.getId());
     }
 
     /**
@@ -122,16 +233,31 @@ public class House extends Building {
     }
 
     /**
-     * Moves the house to a specific floor, but only if the house has an elevator.
+     * Moves to a floor without throwing. Without an elevator, only the floor
+     * above or below can be reached, as with goUp() and goDown().
      *
      * @param floorNum the floor number to go to
-     * @throws RuntimeException if the house doesn't have an elevator
+     * @return OK, or NO_ELEVATOR if the move skips floors in a house without an elevator
+     */
+    public NavResult tryGoToFloor(int floorNum) {
+        if (!this.hasElevator && this.activeFloor != -1 && Math.abs(floorNum - this.activeFloor) > 1) {
+            return NavResult.NO_ELEVATOR;
+        }
+        return super.tryGoToFloor(floorNum);
+    }
+
+    /**
+     * Checks a visitor's move: without an elevator, visitors can only go one floor at a time.
+     *
+     * @param fromFloor the visitor's floor
+     * @param toFloor   the floor they want to go to
+     * @throws RuntimeException if the house has no elevator and the move skips floors
      */
-    public void goToFloor(int floorNum) {
-        if (!this.hasElevator) {
+    protected void checkMove(int fromFloor, int toFloor) {
+        super.checkMove(fromFloor, toFloor);
+        if (!this.hasElevator && Math.abs(toFloor - fromFloor) > 1) {
             throw new RuntimeException("This house doesn't have an elevator. You must use goUp() or goDown() one floor at a time.");
         }
-        super.goToFloor(floorNum); // Call the superclass method to change floors
     }
 
     /**
@@ -154,6 +280,10 @@ public class House extends Building {
 
         // Check residents count
         System.out.println("Number of residents: " + myHouse.getResidentCount());
+        System.out.println("Residents: " + myHouse.getResidents());
+
+        // Residents are identified by student id, not by object
+        System.out.println("Is a copy of Tabz's record a resident? " + myHouse.isResident(new Student("Tabz", "12345", 20)));
 
         // Check if a student is a resident
         System.out.println("Is Tabz a resident? " + myHouse.isResident(s1));
@@ -0,0 +1,394 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Places a large batch of students into the Houses of a CampusMap.
+ *
+ * Each student ranks the houses they'd like and may need a dining room or an
+ * elevator. Students are put in a random lottery order (fixed by a seed), and
+ * the lottery works like a housing draw: in lottery order, each student gets
+ * the first house on their list that suits them and still has room. Houses
+ * that suit the student but aren't on their list are tried afterwards, in map
+ * order, so nobody is left out while a suitable bed is free.
+ *
+ * The matching runs as rounds of proposals: every unplaced student asks their
+ * next house, and each house keeps its best lottery numbers up to capacity and
+ * turns the rest away. Building the candidate lists and settling each house's
+ * proposals run in parallel on a fork/join pool. Because houses all rank
+ * students by the same lottery number, the outcome is the same as handing out
+ * rooms one student at a time, and the same seed always gives the same result.
+ *
+ * A student enters at most once: later requests with the same student id are
+ * ignored, and students who already live in one of the houses are left out.
+ */
+public class HousingLottery {
+
+    private static final int STUDENTS_PER_TASK = 2_048; // Smallest slice of students handled by one fork/join task
+
+    private ArrayList<House> houses;            // Houses in map order
+    private HashMap<String, Integer> houseIds;  // House name -> position in houses
+    private ForkJoinPool pool;
+
+    /**
+     * A student's entry in the lottery.
+     */
+    public static class Request {
+        private Student student;
+        private List<String> preferences;  // House names, most wanted first
+        private boolean needsDiningRoom;
+        private boolean needsElevator;
+
+        /**
+         * Constructs a request with accessibility or dining needs.
+         *
+         * @param student         the student
+         * @param preferences     house names, most wanted first
+         * @param needsDiningRoom whether the student must live in a house with a dining room
+         * @param needsElevator   whether the student must live in a house with an elevator
+         */
+        public Request(Student student, List<String> preferences, boolean needsDiningRoom, boolean needsElevator) {
+            this.student = student;
+            this.preferences = preferences;
+            this.needsDiningRoom = needsDiningRoom;
+            this.needsElevator = needsElevator;
+        }
+
+        /**
+         * Overloaded constructor for a student with no dining or elevator needs.
+         *
+         * @param student     the student
+         * @param preferences house names, most wanted first
+         */
+        public Request(Student student, List<String> preferences) {
+            this(student, preferences, false, false);
+        }
+
+        public Student getStudent() {
+            return this.student;
+        }
+
+        /* Whether the house meets this student's needs */
+        boolean suits(House house) {
+            return (!needsDiningRoom || house.hasDiningRoom()) && (!needsElevator || house.hasElevator());
+        }
+    }
+
+    /**
+     * The outcome of a lottery.
+     */
+    public static class Result {
+        private LinkedHashMap<Student, House> assignments; // In lottery order
+        private ArrayList<Student> unplaced;               // In lottery order
+        private ArrayList<Student> alreadyHoused;          // In request order
+        private double seconds;
+
+        Result(LinkedHashMap<Student, House> assignments, ArrayList<Student> unplaced, ArrayList<Student> alreadyHoused,
+                double seconds) {
+            this.assignments = assignments;
+            this.unplaced = unplaced;
+            this.alreadyHoused = alreadyHoused;
+            this.seconds = seconds;
+        }
+
+        public Map<Student, House> getAssignments() {
+            return this.assignments;
+        }
+
+        public List<Student> getUnplaced() {
+            return this.unplaced;
+        }
+
+        /**
+         * Returns the students left out of the draw because they already live in one of the houses.
+         *
+         * @return those students, in request order
+         */
+        public List<Student> getAlreadyHoused() {
+            return this.alreadyHoused;
+        }
+
+        public double getSeconds() {
+            return this.seconds;
+        }
+
+        public double getStudentsPerSecond() {
+            return (assignments.size() + unplaced.size()) / seconds;
+        }
+    }
+
+    /**
+     * Constructs a lottery over every House on the map, using the common fork/join pool.
+     *
+     * @param map the campus map whose houses take part
+     */
+    public HousingLottery(CampusMap map) {
+        this(map, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Overloaded constructor that runs the matching on the given pool.
+     *
+     * @param map  the campus map whose houses take part
+     * @param pool the pool to run the matching on
+     */
+    public HousingLottery(CampusMap map, ForkJoinPool pool) {
+        this.houses = new ArrayList<>();
+        this.houseIds = new HashMap<>();
+        for (Building b : map.getBuildings()) {
+            if (b instanceof House) {
+                houseIds.putIfAbsent(b.getName(), houses.size());
+                houses.add((House) b);
+            }
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Runs the lottery and moves every placed student into their house.
+     *
+     * @param requests the students taking part; only a student's first request counts
+     * @param seed     the lottery seed; the same seed gives the same result
+     * @return the assignments, the students who couldn't be placed and those who already had a house
+     */
+    public Result run(List<Request> requests, long seed) {
+        long startTime = System.nanoTime();
+        ArrayList<Student> alreadyHoused = new ArrayList<>();
+        requests = entries(requests, alreadyHoused);
+        int n = requests.size();
+
+        // Draw lottery numbers: order[k] is the k-th student drawn, rank[i] is student i's number
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        int[] rank = new int[n];
+        for (int k = 0; k < n; k++) {
+            rank[order[k]] = k;
+        }
+
+        // Every student's houses to try, in order
+        int[][] candidates = new int[n][];
+        List<Request> entries = requests;
+        forEach(n, STUDENTS_PER_TASK, i -> candidates[i] = candidatesFor(entries.get(i)));
+
+        int[] room = new int[houses.size()];
+        for (int h = 0; h < room.length; h++) {
+            room[h] = Math.max(0, houses.get(h).getCapacity() - houses.get(h).getResidentCount());
+        }
+        int[][] held = new int[houses.size()][]; // Ranks of the students each house is holding, best first
+        Arrays.fill(held, new int[0]);
+        int[] next = new int[n]; // Next candidate each student will ask
+        int[] proposers = stillLooking(new int[][] {rank}, candidates, next, order); // Everyone with a suitable house
+
+        while (proposers.length > 0) {
+            int[][] proposals = bucketByHouse(proposers, candidates, next, rank);
+            int[][] rejected = new int[houses.size()][];
+            forEach(houses.size(), 1, h -> {
+                int[] merged = Arrays.copyOf(held[h], held[h].length + proposals[h].length);
+                System.arraycopy(proposals[h], 0, merged, held[h].length, proposals[h].length);
+                Arrays.sort(merged); // Lowest lottery numbers first
+                int keep = Math.min(room[h], merged.length);
+                held[h] = Arrays.copyOf(merged, keep);
+                rejected[h] = Arrays.copyOfRange(merged, keep, merged.length);
+            });
+            proposers = stillLooking(rejected, candidates, next, order);
+        }
+
+        // Move everyone in and report
+        LinkedHashMap<Student, House> assignments = new LinkedHashMap<>();
+        House[] placedIn = new House[n];
+        for (int h = 0; h < held.length; h++) {
+            ArrayList<Student> movingIn = new ArrayList<>(held[h].length);
+            for (int r : held[h]) {
+                placedIn[order[r]] = houses.get(h);
+                movingIn.add(requests.get(order[r]).getStudent());
+            }
+            houses.get(h).moveInAll(movingIn);
+        }
+        ArrayList<Student> unplaced = new ArrayList<>();
+        for (int k = 0; k < n; k++) {
+            Student s = requests.get(order[k]).getStudent();
+            if (placedIn[order[k]] != null) {
+                assignments.put(s, placedIn[order[k]]);
+            } else {
+                unplaced.add(s);
+            }
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return new Result(assignments, unplaced, alreadyHoused, seconds);
+    }
+
+    /* Each student's first request, leaving out students who already live in one of the houses */
+    private List<Request> entries(List<Request> requests, ArrayList<Student> alreadyHoused) {
+        ArrayList<Request> entries = new ArrayList<>(requests.size());
+        HashSet<String> seen = new HashSet<>();
+        for (Request request : requests) {
+            Student s = request.getStudent();
+            if (!seen.add(s.getId())) {
+                continue; // A repeat entry
+            }
+            if (livesInAHouse(s)) {
+                alreadyHoused.add(s);
+            } else {
+                entries.add(request);
+            }
+        }
+        return entries;
+    }
+
+    private boolean livesInAHouse(Student s) {
+        for (House house : houses) {
+            if (house.isResident(s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* The houses a student will try: suitable preferences first, then other suitable houses in map order */
+    private int[] candidatesFor(Request request) {
+        int[] list = new int[houses.size()];
+        boolean[] listed = new boolean[houses.size()];
+        int count = 0;
+        for (String name : request.preferences) {
+            Integer h = houseIds.get(name);
+            if (h != null && !listed[h] && request.suits(houses.get(h))) {
+                listed[h] = true;
+                list[count++] = h;
+            }
+        }
+        for (int h = 0; h < houses.size(); h++) {
+            if (!listed[h] && request.suits(houses.get(h))) {
+                list[count++] = h;
+            }
+        }
+        return Arrays.copyOf(list, count);
+    }
+
+    /* Groups this round's proposals by house, as lottery numbers, and moves each proposer on to their next house */
+    private int[][] bucketByHouse(int[] proposers, int[][] candidates, int[] next, int[] rank) {
+        int[] counts = new int[houses.size()];
+        for (int i : proposers) {
+            counts[candidates[i][next[i]]]++;
+        }
+        int[][] proposals = new int[houses.size()][];
+        for (int h = 0; h < proposals.length; h++) {
+            proposals[h] = new int[counts[h]];
+            counts[h] = 0;
+        }
+        for (int i : proposers) {
+            int h = candidates[i][next[i]++];
+            proposals[h][counts[h]++] = rank[i];
+        }
+        return proposals;
+    }
+
+    /* Students turned away this round who still have houses left to try */
+    private static int[] stillLooking(int[][] rejected, int[][] candidates, int[] next, int[] order) {
+        int total = 0;
+        for (int[] r : rejected) {
+            total += r.length;
+        }
+        int[] proposers = new int[total];
+        int count = 0;
+        for (int[] r : rejected) {
+            for (int k : r) {
+                int i = order[k];
+                if (next[i] < candidates[i].length) {
+                    proposers[count++] = i;
+                }
+            }
+        }
+        return Arrays.copyOf(proposers, count);
+    }
+
+    /* Runs body(i) for every i in [0, n) on the pool, splitting into tasks of at least minChunk indices */
+    private void forEach(int n, int minChunk, IntConsumer body) {
+        pool.invoke(new RangeTask(0, n, minChunk, body));
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int minChunk;
+        private final IntConsumer body;
+
+        RangeTask(int from, int to, int minChunk, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.minChunk = minChunk;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= minChunk) {
+                for (int i = from; i < to; i++) {
+                    body.accept(i);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RangeTask(from, mid, minChunk, body), new RangeTask(mid, to, minChunk, body));
+            }
+        }
+    }
+
+    /**
+     * Runs a lottery for 100,000 students over a handful of houses.
+     */
+    public static void main(String[] args) {
+        CampusMap map = new CampusMap();
+        String[] names = {"Ziskind House", "Gilette House", "Morrow House", "Cutter House", "Lawrence House", "Northrop House"};
+        map.addBuilding(new House(names[0], "1 Henshaw Ave, Northampton, MA", 4, true, true, 25_000));
+        map.addBuilding(new House(names[1], "2 College Lane, Northampton, MA", 3, false, false, 15_000));
+        map.addBuilding(new House(names[2], "3 Morrow Lane, Northampton, MA", 4, true, false, 20_000));
+        map.addBuilding(new House(names[3], "4 Cutter Road, Northampton, MA", 5, true, true, 20_000));
+        map.addBuilding(new House(names[4], "5 Lawrence Street, Northampton, MA", 3, false, true, 10_000));
+        map.addBuilding(new House(names[5], "6 Northrop St, Northampton, MA", 3, true, false, 5_000));
+
+        Random random = new Random(2025);
+        ArrayList<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            List<String> preferences = new ArrayList<>();
+            for (int p = 0; p < 3; p++) {
+                preferences.add(names[random.nextInt(names.length)]);
+            }
+            Student s = new Student("Student " + i, "S" + i, 2026 + i % 4);
+            requests.add(new Request(s, preferences, random.nextInt(10) == 0, random.nextInt(20) == 0));
+        }
+
+        Student resident = new Student("Resident", "R0", 2026); // Already lives in Ziskind, so stays out of the draw
+        ((House) map.findByName(names[0]).get(0)).moveIn(resident);
+        requests.add(new Request(resident, List.of(names[1])));
+        requests.add(new Request(requests.get(0).getStudent(), List.of(names[5]))); // A second entry, ignored
+
+        Result result = new HousingLottery(map).run(requests, 42L);
+        System.out.println("Housing lottery placed " + result.getAssignments().size() + " of " + requests.size()
+                + " requests in " + String.format("%.3f", result.getSeconds()) + "s ("
+                + String.format("%.0f", result.getStudentsPerSecond()) + " students/sec)");
+        for (Building b : map.getBuildings()) {
+            House h = (House) b;
+            System.out.println("  " + h.getName() + ": " + h.getResidentCount() + " of " + h.getCapacity());
+        }
+        System.out.println("Unplaced students: " + result.getUnplaced().size());
+        System.out.println("Already housed: " + result.getAlreadyHoused());
+    }
+}
@@ -0,0 +1,488 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Measures calls made through a building's requirements interface
+ * (BuildingRequirements, LibraryRequirements, HouseRequirements or
+ * CafeRequirements) and publishes the results over JMX.
+ *
+ * wrap() returns a stand-in for the building that counts every call, times it
+ * and counts failures: a call fails if it throws, or if a method that changes
+ * something (anything not named is..., has... or contains...) returns false.
+ * The stand-ins are plain classes that call the building directly, one per
+ * interface. Each building's BuildingMetrics is registered with the platform
+ * MBean server under "campus:type=BuildingMetrics" and stays there until
+ * unregister() is called for the building. While instrumentation is disabled,
+ * wrap() hands back the building itself, so there is no cost at all.
+ */
+public class Instrumentation {
+
+    private static final long OFF = Long.MIN_VALUE; // Start time of a call made while instrumentation is off
+
+    private static volatile boolean enabled = false;
+    private static final Map<Building, BuildingMetrics> metrics = new ConcurrentHashMap<>();
+
+    private Instrumentation() {
+    }
+
+    /**
+     * Turns instrumentation on or off. Stand-ins already handed out stop
+     * recording while it is off, but keep forwarding calls.
+     *
+     * @param on whether to instrument
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns an instrumented stand-in for a building, or the building itself if
+     * instrumentation is disabled.
+     *
+     * @param requirements the interface to instrument, e.g. LibraryRequirements.class
+     * @param building     the building, which must implement that interface
+     * @return something that implements the interface and forwards to the building
+     * @throws RuntimeException if requirements isn't one of the four requirements interfaces
+     */
+    public static <T> T wrap(Class<T> requirements, Building building) {
+        T target = requirements.cast(building);
+        if (!enabled) {
+            return target;
+        }
+        BuildingMetrics stats = metricsFor(building);
+        Object standIn;
+        if (requirements == LibraryRequirements.class) {
+            standIn = new InstrumentedLibrary(building, stats);
+        } else if (requirements == HouseRequirements.class) {
+            standIn = new InstrumentedHouse(building, stats);
+        } else if (requirements == CafeRequirements.class) {
+            standIn = new InstrumentedCafe(building, stats);
+        } else if (requirements == BuildingRequirements.class) {
+            standIn = new InstrumentedBuilding(building, stats);
+        } else {
+            throw new RuntimeException("Cannot instrument " + requirements.getSimpleName() + ".");
+        }
+        return requirements.cast(standIn);
+    }
+
+    /**
+     * Returns the building behind a stand-in made by wrap().
+     *
+     * @param standIn a stand-in, or a building wrap() handed back as it was
+     * @return the building
+     */
+    public static Building unwrap(Object standIn) {
+        return standIn instanceof Decorator ? ((Decorator) standIn).building : (Building) standIn;
+    }
+
+    /**
+     * Returns the metrics for a building, creating and registering them if needed.
+     *
+     * @param building the building
+     * @return its metrics
+     */
+    public static BuildingMetrics metricsFor(Building building) {
+        return metrics.computeIfAbsent(building, b -> {
+            BuildingMetrics stats = new BuildingMetrics(b);
+            register(stats, objectName(b));
+            return stats;
+        });
+    }
+
+    /**
+     * Forgets a building's metrics and removes them from JMX, so neither keeps
+     * the building alive. Stand-ins still in use keep forwarding calls, and
+     * record into metrics that nothing reports any more.
+     *
+     * @param building the building
+     * @return true if the building had metrics
+     */
+    public static boolean unregister(Building building) {
+        if (metrics.remove(building) == null) {
+            return false;
+        }
+        unregister(objectName(building));
+        return true;
+    }
+
+    /* Metrics for a building that has been instrumented, or null */
+    static BuildingMetrics existingMetricsFor(Building building) {
+        return metrics.get(building);
+    }
+
+    /* Registers a bean with the platform MBean server, replacing any bean of the same name */
+    static void register(Object bean, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(bean, objectName);
+        } catch (JMException e) {
+            throw new RuntimeException("Could not register " + name + " with JMX.", e);
+        }
+    }
+
+    /* Removes a bean from the platform MBean server, if it is there */
+    static void unregister(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(name));
+        } catch (InstanceNotFoundException e) {
+            // Already gone
+        } catch (JMException e) {
+            throw new RuntimeException("Could not unregister " + name + " from JMX.", e);
+        }
+    }
+
+    private static String objectName(Building building) {
+        return "campus:type=BuildingMetrics,name=" + ObjectName.quote(String.valueOf(building.getName()))
+                + ",id=" + System.identityHashCode(building);
+    }
+
+    /*
+     * What the stand-ins share: begin() notes when a call starts, and end()
+     * records it, unless instrumentation was off when it started.
+     */
+    private abstract static class Decorator {
+        final Building building;
+        final BuildingMetrics stats;
+
+        Decorator(Building building, BuildingMetrics stats) {
+            this.building = building;
+            this.stats = stats;
+        }
+
+        static long begin() {
+            return enabled ? System.nanoTime() : OFF;
+        }
+
+        void end(String operation, long start, boolean failed) {
+            if (start != OFF) {
+                stats.record(operation, System.nanoTime() - start, failed);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return building.toString();
+        }
+    }
+
+    private static class InstrumentedBuilding extends Decorator implements BuildingRequirements {
+        private final BuildingRequirements target;
+
+        InstrumentedBuilding(Building building, BuildingMetrics stats) {
+            super(building, stats);
+            this.target = building;
+        }
+
+        @Override
+        public String getName() {
+            long start = begin();
+            boolean done = false;
+            try {
+                String name = target.getName();
+                done = true;
+                return name;
+            } finally {
+                end("getName", start, !done);
+            }
+        }
+
+        @Override
+        public String getAddress() {
+            long start = begin();
+            boolean done = false;
+            try {
+                String address = target.getAddress();
+                done = true;
+                return address;
+            } finally {
+                end("getAddress", start, !done);
+            }
+        }
+
+        @Override
+        public int getFloors() {
+            long start = begin();
+            boolean done = false;
+            try {
+                int floors = target.getFloors();
+                done = true;
+                return floors;
+            } finally {
+                end("getFloors", start, !done);
+            }
+        }
+
+        @Override
+        public void showOptions() {
+            long start = begin();
+            boolean done = false;
+            try {
+                target.showOptions();
+                done = true;
+            } finally {
+                end("showOptions", start, !done);
+            }
+        }
+
+        @Override
+        public void goToFloor(int floorNum) {
+            long start = begin();
+            boolean done = false;
+            try {
+                target.goToFloor(floorNum);
+                done = true;
+            } finally {
+                end("goToFloor", start, !done);
+            }
+        }
+    }
+
+    private static class InstrumentedLibrary extends Decorator implements LibraryRequirements {
+        private final LibraryRequirements target;
+
+        InstrumentedLibrary(Building building, BuildingMetrics stats) {
+            super(building, stats);
+            this.target = (LibraryRequirements) building;
+        }
+
+        @Override
+        public void addTitle(String title) {
+            long start = begin();
+            boolean done = false;
+            try {
+                target.addTitle(title);
+                done = true;
+            } finally {
+                end("addTitle", start, !done);
+            }
+        }
+
+        @Override
+        public String removeTitle(String title) {
+            long start = begin();
+            boolean done = false;
+            try {
+                String removed = target.removeTitle(title);
+                done = true;
+                return removed;
+            } finally {
+                end("removeTitle", start, !done);
+            }
+        }
+
+        @Override
+        public boolean checkOut(String title) {
+            long start = begin();
+            boolean ok = false;
+            try {
+                ok = target.checkOut(title);
+                return ok;
+            } finally {
+                end("checkOut", start, !ok);
+            }
+        }
+
+        @Override
+        public boolean returnBook(String title) {
+            long start = begin();
+            boolean ok = false;
+            try {
+                ok = target.returnBook(title);
+                return ok;
+            } finally {
+                end("returnBook", start, !ok);
+            }
+        }
+
+        @Override
+        public boolean containsTitle(String title) {
+            long start = begin();
+            boolean done = false;
+            try {
+                boolean contains = target.containsTitle(title);
+                done = true;
+                return contains;
+            } finally {
+                end("containsTitle", start, !done);
+            }
+        }
+
+        @Override
+        public boolean isAvailable(String title) {
+            long start = begin();
+            boolean done = false;
+            try {
+                boolean available = target.isAvailable(title);
+                done = true;
+                return available;
+            } finally {
+                end("isAvailable", start, !done);
+            }
+        }
+
+        @Override
+        public void printCollection() {
+            long start = begin();
+            boolean done = false;
+            try {
+                target.printCollection();
+                done = true;
+            } finally {
+                end("printCollection", start, !done);
+            }
+        }
+    }
+
+    private static class InstrumentedHouse extends Decorator implements HouseRequirements {
+        private final HouseRequirements target;
+
+        InstrumentedHouse(Building building, BuildingMetrics stats) {
+            super(building, stats);
+            this.target = (HouseRequirements) building;
+        }
+
+        @Override
+        public boolean hasDiningRoom() {
+            long start = begin();
+            boolean done = false;
+            try {
+                boolean dining = target.hasDiningRoom();
+                done = true;
+                return dining;
+            } finally {
+                end("hasDiningRoom", start, !done);
+            }
+        }
+
+        @Override
+        public int nResidents() {
+            long start = begin();
+            boolean done = false;
+            try {
+                int residents = target.nResidents();
+                done = true;
+                return residents;
+            } finally {
+                end("nResidents", start, !done);
+            }
+        }
+
+        @Override
+        public void moveIn(Student s) {
+            long start = begin();
+            boolean done = false;
+            try {
+                target.moveIn(s);
+                done = true;
+            } finally {
+                end("moveIn", start, !done);
+            }
+        }
+
+        @Override
+        public Student moveOut(Student s) {
+            long start = begin();
+            boolean done = false;
+            try {
+                Student student = target.moveOut(s);
+                done = true;
+                return student;
+            } finally {
+                end("moveOut", start, !done);
+            }
+        }
+
+        @Override
+        public boolean isResident(Student s) {
+            long start = begin();
+            boolean done = false;
+            try {
+                boolean resident = target.isResident(s);
+                done = true;
+                return resident;
+            } finally {
+                end("isResident", start, !done);
+            }
+        }
+    }
+
+    private static class InstrumentedCafe extends Decorator implements CafeRequirements {
+        private final CafeRequirements target;
+
+        InstrumentedCafe(Building building, BuildingMetrics stats) {
+            super(building, stats);
+            this.target = (CafeRequirements) building;
+        }
+
+        @Override
+        public void sellCoffee(int size, int nSugarPackets, int nCreams) {
+            long start = begin();
+            boolean done = false;
+            try {
+                target.sellCoffee(size, nSugarPackets, nCreams);
+                done = true;
+            } finally {
+                end("sellCoffee", start, !done);
+            }
+        }
+    }
+
+    /**
+     * Instruments a library, a house and a cafe, uses them, and prints what JMX would show.
+     */
+    public static void main(String[] args) {
+        Events.setSink(Events.SILENT);
+        setEnabled(true);
+        CampusMap map = new CampusMap();
+        Library neilson = new Library("Neilson Library", "10 Elm St, Northampton, MA", 4);
+        House ziskind = new House("Ziskind House", "100 Elm St, Northampton, MA", 3, true, true);
+        Cafe cafe = new Cafe("Campus Cafe", "123 Campus Road, Northampton, MA", 1);
+        map.addBuilding(neilson);
+        map.addBuilding(ziskind);
+        map.addBuilding(cafe);
+        CampusMetrics campus = CampusMetrics.register(map);
+
+        LibraryRequirements library = wrap(LibraryRequirements.class, neilson);
+        HouseRequirements house = wrap(HouseRequirements.class, ziskind);
+        CafeRequirements register = wrap(CafeRequirements.class, cafe);
+        library.addTitle("Beloved");
+        for (int i = 0; i < 10_000; i++) {
+            library.checkOut("Beloved");
+            library.returnBook("Beloved");
+            register.sellCoffee(12, 1, 1);
+        }
+        library.checkOut("Missing Book");
+        for (int i = 0; i < 100; i++) {
+            house.moveIn(new Student("Student " + i, "S" + i, 2027));
+        }
+
+        BuildingMetrics stats = metricsFor(neilson);
+        System.out.println(stats.getBuildingName() + " calls: " + stats.getCallCounts());
+        System.out.println(stats.getBuildingName() + " errors: " + stats.getErrorCounts());
+        System.out.println(stats.getBuildingName() + " p50 ns: " + stats.getLatencyP50Nanos());
+        System.out.println(stats.getBuildingName() + " p99 ns: " + stats.getLatencyP99Nanos());
+        System.out.println("Campus calls by building: " + campus.getCallCountsByBuilding());
+        System.out.println("Campus calls by operation: " + campus.getCallCountsByOperation());
+
+        map.removeBuilding(cafe);
+        unregister(unwrap(register));
+        System.out.println("Instrumented buildings after the cafe closed: " + campus.getInstrumentedBuildings());
+        campus.unregister();
+        unregister(neilson);
+        unregister(ziskind);
+        Events.setSink(Events.CONSOLE);
+    }
+}
@@ -1,14 +1,53 @@
-import java.util.Hashtable;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * Represents a Library, which is a type of Building.
  * The Library manages a collection of books and allows adding, removing,
  * checking out, and returning books.
+ * A title can be held in several copies. The collection is safe to share between
+ * threads: checking out and returning a copy are single compare-and-set
+ * operations, so two desks can never both check out the same copy.
  */
-public class Library extends Building {
+public class Library extends Building implements LibraryRequirements, Closeable {
 
     // Library specific attributes
-    private Hashtable<String, Boolean> collection; // Stores book titles and their availability
+    private Holdings holdings;                             // Stores book titles and how many copies are available
+    private volatile TitleIndex titleIndex;                // Word and trigram index over the titles, or null until the next search builds it
+    private final Object titleIndexLock = new Object();    // Held while the index is built
+    private boolean scanSearches;                          // Whether searches scan the catalog instead of using the index
+    private volatile LibraryJournal journal;               // Durable log of changes, or null if not journaled
+    private final Object[] titleLocks = new Object[64];    // Orders journal records and index updates per title
+
+    private final AtomicReference<Object> rendered = new AtomicReference<>(); // printCollection() text, RENDERING, or null
+
+    private static final int IMPORT_BATCH_SIZE = 10_000;   // Titles read from disk before each bulk insert
+    private static final int IMPORT_BLOCK_BYTES = 1 << 20; // Bytes read from the file at a time; also the longest line
+    private static final int RENDER_CACHE_TITLES = 10_000; // Bigger collections are streamed, never cached
+    private static final Object RENDERING = new Object();  // Marks a rendering in progress; a change clears it
 
     /**
      * Constructor to initialize a Library object with its specific attributes.
@@ -18,8 +57,45 @@ public class Library extends Building {
      * @param nFloors  Number of floors in the library
      */
     public Library(String name, String address, int nFloors) {
+        this(name, address, nFloors, 16); // Start small; the collection grows as titles are added
+    }
+
+    /**
+     * Overloaded constructor that pre-sizes the collection, so loading a large
+     * catalog doesn't repeatedly rehash the map.
+     *
+     * @param name            Name of the library
+     * @param address         Address of the library
+     * @param nFloors         Number of floors in the library
+     * @param expectedTitles  Number of titles the library is expected to hold
+     */
+    public Library(String name, String address, int nFloors, int expectedTitles) {
         super(name, address, nFloors);
-        collection = new Hashtable<>(); // Initialize the book collection
+        holdings = new Holdings(expectedTitles); // Initialize the book collection
+        titleIndex = new TitleIndex();
+        for (int i = 0; i < titleLocks.length; i++) {
+            titleLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Overloaded constructor for a library whose catalog lives on disk (see
+     * DiskHoldings), for collections too big to keep in memory. The catalog
+     * in the directory is opened, or created if there is none. Title searches
+     * scan the catalog instead of using an in-memory index. Call close() when
+     * done with the library, so the catalog files are flushed and closed.
+     *
+     * @param name              Name of the library
+     * @param address           Address of the library
+     * @param nFloors           Number of floors in the library
+     * @param catalogDirectory  Directory holding the catalog files
+     * @throws UncheckedIOException if the catalog can't be opened
+     */
+    public Library(String name, String address, int nFloors, Path catalogDirectory) {
+        this(name, address, nFloors, 16);
+        holdings = DiskHoldings.open(catalogDirectory);
+        titleIndex = null;
+        scanSearches = true;
     }
 
     /**
@@ -29,8 +105,7 @@ public class Library extends Building {
      * @param address  Address of the library
      */
     public Library(String name, String address) {
-        super(name, address, 1); // Default to a single-floor library
-        collection = new Hashtable<>(); // Initialize the book collection
+        this(name, address, 1); // Default to a single-floor library
     }
 
     /**
@@ -39,14 +114,155 @@ public class Library extends Building {
      * @param title The title of the book to be added
      */
     public void addTitle(String title) {
-        if (!collection.containsKey(title)) {
-            collection.put(title, true); // Mark as available
-            System.out.println("Title added: " + title);
+        boolean added;
+        synchronized (titleLock(title)) { // So a removal can't slip in between the holdings and the index
+            added = tryAdd(title); // Mark as available
+            if (added) {
+                indexAdd(List.of(title));
+            }
+        }
+        if (added) {
+            Events.emit(EventType.TITLE_ADDED, this, title);
         } else {
-            System.out.println("Title already exists: " + title);
+            Events.emit(EventType.TITLE_EXISTS, this, title);
+        }
+    }
+
+    /**
+     * What importTitles() did: how many titles it added and skipped, and how fast.
+     */
+    public static class ImportResult {
+        private final Path file;
+        private final int added;
+        private final long lines;
+        private final double seconds;
+
+        ImportResult(Path file, int added, long lines, double seconds) {
+            this.file = file;
+            this.added = added;
+            this.lines = lines;
+            this.seconds = seconds;
+        }
+
+        public int getAdded() {
+            return this.added;
+        }
+
+        /* Blank lines and titles already in the collection */
+        public long getSkipped() {
+            return this.lines - this.added;
+        }
+
+        public double getSeconds() {
+            return this.seconds;
+        }
+
+        public double getLinesPerSecond() {
+            return this.lines / Math.max(this.seconds, 1e-9);
+        }
+
+        public String toString() {
+            return "Imported " + added + " new titles (" + getSkipped() + " skipped) from " + file + " in "
+                    + String.format("%.3f", seconds) + "s (" + String.format("%.0f", getLinesPerSecond()) + " lines/sec)";
         }
     }
 
+    /**
+     * Loads titles from a text file, one title per line, without printing anything.
+     * The file is read in large blocks straight from its channel and inserted in
+     * batches, each batch in parallel, so only one batch is held in memory at a
+     * time. The collection is first grown to fit the file, estimated from its
+     * size and the length of its first lines. Blank lines and titles already in
+     * the collection are skipped.
+     *
+     * The title index isn't updated title by title: it is dropped when the import
+     * finishes and rebuilt by the next search, so imported titles show up in
+     * searches once the import is done.
+     *
+     * @param file The file to read titles from (UTF-8)
+     * @return How many titles were added and skipped, and how long it took
+     * @throws UncheckedIOException if the file can't be read
+     */
+    public ImportResult importTitles(Path file) {
+        AtomicInteger added = new AtomicInteger();
+        long lines = 0;
+        long startTime = System.nanoTime();
+        ArrayList<String> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(IMPORT_BLOCK_BYTES);
+            byte[] bytes = buffer.array();
+            boolean sized = false;
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                int end = buffer.position();
+                if (!sized) {
+                    reserveTitles(holdings.size() + estimateLines(bytes, end, fileSize));
+                    sized = true;
+                }
+                int lineStart = 0;
+                for (int i = 0; i < end; i++) {
+                    if (bytes[i] == '\n') {
+                        lines++;
+                        addLine(bytes, lineStart, i, batch, added);
+                        lineStart = i + 1;
+                    }
+                }
+                if (eof && lineStart < end) { // Last line without a newline
+                    lines++;
+                    addLine(bytes, lineStart, end, batch, added);
+                    lineStart = end;
+                }
+                if (lineStart == 0 && end == bytes.length) {
+                    throw new IOException("A line is longer than " + IMPORT_BLOCK_BYTES + " bytes");
+                }
+                buffer.position(lineStart).limit(end);
+                buffer.compact(); // Carry the partial last line over to the next block
+            }
+            insertBatch(batch, added);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not import titles from " + file, e);
+        }
+        if (added.get() > 0) {
+            invalidateTitleIndex();
+        }
+        return new ImportResult(file, added.get(), lines, (System.nanoTime() - startTime) / 1e9);
+    }
+
+    /* Queues one line of the file for insertion, inserting the batch when it is full */
+    private void addLine(byte[] bytes, int from, int to, ArrayList<String> batch, AtomicInteger added) {
+        String line = new String(bytes, from, to - from, StandardCharsets.UTF_8).strip();
+        if (!line.isEmpty()) {
+            batch.add(line);
+        }
+        if (batch.size() == IMPORT_BATCH_SIZE) {
+            insertBatch(batch, added);
+            batch.clear();
+        }
+    }
+
+    /* Lines in the file, going by the average length of the lines in its first block */
+    private static int estimateLines(byte[] bytes, int length, long fileSize) {
+        int newlines = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                newlines++;
+            }
+        }
+        if (newlines == 0) {
+            return 1;
+        }
+        return (int) Math.min(Integer.MAX_VALUE / 2, fileSize * newlines / length + 1);
+    }
+
+    /* Adds every title in the batch that isn't already in the collection; the index is rebuilt after the import */
+    private void insertBatch(List<String> batch, AtomicInteger added) {
+        Stream<String> titles = ForkJoinPool.getCommonPoolParallelism() > 1 ? batch.parallelStream() : batch.stream();
+        long count = titles.filter(this::tryAdd).count();
+        added.addAndGet((int) count);
+    }
+
     /**
      * Removes a title from the library's collection.
      *
@@ -54,12 +270,19 @@ public class Library extends Building {
      * @return The title of the removed book, or a message if not found
      */
     public String removeTitle(String title) {
-        if (collection.containsKey(title)) {
-            collection.remove(title);
-            System.out.println("Title removed: " + title);
+        boolean removed;
+        synchronized (titleLock(title)) {
+            removed = tryRemove(title);
+            TitleIndex index = removed ? builtTitleIndex() : null;
+            if (index != null) {
+                index.remove(title);
+            }
+        }
+        if (removed) {
+            Events.emit(EventType.TITLE_REMOVED, this, title);
             return title;
         } else {
-            System.out.println("Title not found: " + title);
+            Events.emit(EventType.TITLE_NOT_FOUND, this, title);
             return null; // Returns null if the book isn't found
         }
     }
@@ -68,13 +291,15 @@ public class Library extends Building {
      * Checks out a book from the library.
      *
      * @param title The title of the book to be checked out
+     * @return true if the book was checked out, false if it is unavailable or doesn't exist
      */
-    public void checkOut(String title) {
-        if (collection.containsKey(title) && collection.get(title)) { // Check if book is available
-            collection.put(title, false); // Mark as checked out
-            System.out.println("Checked out: " + title);
+    public boolean checkOut(String title) {
+        if (tryCheckOut(title)) {
+            Events.emit(EventType.CHECKED_OUT, this, title);
+            return true;
         } else {
-            System.out.println("Cannot check out: " + title + " (Not available or doesn't exist)");
+            Events.emit(EventType.CHECK_OUT_FAILED, this, title);
+            return false;
         }
     }
 
@@ -82,13 +307,262 @@ public class Library extends Building {
      * Returns a book to the library.
      *
      * @param title The title of the book to be returned
+     * @return true if the book was returned, false if it wasn't checked out or doesn't exist
      */
-    public void returnBook(String title) {
-        if (collection.containsKey(title)) {
-            collection.put(title, true); // Mark as available
-            System.out.println("Returned: " + title);
+    public boolean returnBook(String title) {
+        if (tryReturn(title)) {
+            Events.emit(EventType.RETURNED, this, title);
+            return true;
         } else {
-            System.out.println("Cannot return: " + title + " (Not found in collection)");
+            Events.emit(EventType.RETURN_FAILED, this, title);
+            return false;
+        }
+    }
+
+    /**
+     * Atomically takes an available copy off the shelf, without printing anything.
+     *
+     * @param title The title of the book to be checked out
+     * @return true if this call checked a copy out, false otherwise
+     */
+    public boolean tryCheckOut(String title) {
+        return change(LibraryJournal.CHECK_OUT, title, 0);
+    }
+
+    /**
+     * Atomically puts a checked-out copy back on the shelf, without printing anything.
+     *
+     * @param title The title of the book to be returned
+     * @return true if this call returned a copy, false otherwise
+     */
+    public boolean tryReturn(String title) {
+        return change(LibraryJournal.RETURN, title, 0);
+    }
+
+    /**
+     * Adds more copies of a title the library already holds.
+     *
+     * @param title  The title of the book
+     * @param copies The number of copies to add
+     * @return true if the copies were added, false if the title isn't in the collection
+     */
+    public boolean addCopies(String title, int copies) {
+        if (copies < 1) {
+            throw new RuntimeException("Must add at least one copy of " + title + ".");
+        }
+        return change(LibraryJournal.ADD_COPIES, title, copies);
+    }
+
+    /**
+     * Returns how many copies of a title the library holds.
+     *
+     * @param title The title of the book
+     * @return The total number of copies, or 0 if the title isn't in the collection
+     */
+    public int copiesOf(String title) {
+        long state = holdings.get(title);
+        return state == Holdings.NONE ? 0 : Holdings.total(state);
+    }
+
+    /**
+     * Returns how many copies of a title are on the shelf.
+     *
+     * @param title The title of the book
+     * @return The number of available copies, or 0 if the title isn't in the collection
+     */
+    public int availableCopiesOf(String title) {
+        long state = holdings.get(title);
+        return state == Holdings.NONE ? 0 : Holdings.available(state);
+    }
+
+    /* Adds a single available copy of a title if it isn't already in the collection */
+    private boolean tryAdd(String title) {
+        return change(LibraryJournal.ADD, title, 1);
+    }
+
+    /* Removes a title and all its copies if it is in the collection */
+    private boolean tryRemove(String title) {
+        return change(LibraryJournal.REMOVE, title, 0);
+    }
+
+    /*
+     * Applies one change to the holdings. When journaled, the change and its log
+     * record happen under the title's lock stripe, so records for the same title
+     * reach the log in the order the changes happened. The journal is read again
+     * under the stripe so detachJournal() can wait out appends already under way.
+     */
+    private boolean change(byte op, String title, int copies) {
+        if (journal == null) {
+            return changed(apply(op, title, copies) != Holdings.NONE);
+        }
+        synchronized (titleLock(title)) {
+            long state = apply(op, title, copies);
+            if (state == Holdings.NONE) {
+                return false;
+            }
+            LibraryJournal log = journal;
+            if (log != null) {
+                log.append(op, title, Holdings.total(state), Holdings.available(state));
+            }
+            return changed(true);
+        }
+    }
+
+    private Object titleLock(String title) {
+        return titleLocks[title.hashCode() & (titleLocks.length - 1)];
+    }
+
+    /* Drops the cached collection listing after a change; only writes when there is something to drop */
+    private boolean changed(boolean changed) {
+        if (changed && rendered.get() != null) {
+            rendered.set(null);
+        }
+        return changed;
+    }
+
+    private long apply(byte op, String title, int copies) {
+        switch (op) {
+            case LibraryJournal.ADD:
+                return holdings.add(title, copies);
+            case LibraryJournal.ADD_COPIES:
+                return holdings.addCopies(title, copies);
+            case LibraryJournal.REMOVE:
+                return holdings.remove(title);
+            case LibraryJournal.CHECK_OUT:
+                return holdings.checkOut(title);
+            case LibraryJournal.RETURN:
+                return holdings.returnCopy(title);
+            default:
+                throw new IllegalArgumentException("Unknown library change: " + op);
+        }
+    }
+
+    /* Hooks used by LibraryJournal to attach itself and to restore saved state */
+    void attachJournal(LibraryJournal journal) {
+        this.journal = journal;
+    }
+
+    /* Stops journaling, returning once no change can still append to the old journal */
+    void detachJournal() {
+        journal = null;
+        for (Object stripe : titleLocks) {
+            synchronized (stripe) { // Any change holding the stripe read the journal before it was cleared
+            }
+        }
+    }
+
+    Holdings holdings() {
+        return holdings;
+    }
+
+    /**
+     * Returns the on-disk catalog, for its cache and I/O stats.
+     *
+     * @return The catalog, or null if the collection is kept in memory
+     */
+    public DiskHoldings getDiskHoldings() {
+        return holdings instanceof DiskHoldings ? (DiskHoldings) holdings : null;
+    }
+
+    void reserveTitles(int expectedTitles) {
+        holdings.ensureCapacity(expectedTitles);
+    }
+
+    void restoreTitle(String title, int total, int available) {
+        holdings.put(title, total, available);
+        changed(true);
+    }
+
+    void restoreRemoval(String title) {
+        holdings.remove(title);
+        changed(true);
+    }
+
+    /* Drops the title index after a bulk restore; the next search builds it from the holdings */
+    void invalidateTitleIndex() {
+        synchronized (titleIndexLock) {
+            titleIndex = null;
+        }
+    }
+
+    /*
+     * Returns the title index, building it first if a restore dropped it.
+     * Building a big catalog's index takes a while, so recovery leaves it to
+     * the first search instead of doing it up front.
+     */
+    private TitleIndex titleIndex() {
+        TitleIndex index = titleIndex;
+        if (index == null) {
+            synchronized (titleIndexLock) {
+                index = titleIndex;
+                if (index == null) {
+                    ArrayList<String> titles = new ArrayList<>(holdings.size());
+                    holdings.forEach((title, total, available) -> titles.add(title));
+                    index = new TitleIndex();
+                    index.addAll(titles);
+                    titleIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /*
+     * Returns the title index if it has been built, waiting for a build in
+     * progress; null if it hasn't been, in which case the build will read
+     * every title already in the holdings.
+     */
+    private TitleIndex builtTitleIndex() {
+        TitleIndex index = titleIndex;
+        if (index == null && !scanSearches) {
+            synchronized (titleIndexLock) {
+                index = titleIndex;
+            }
+        }
+        return index;
+    }
+
+    private void indexAdd(List<String> titles) {
+        TitleIndex index = builtTitleIndex();
+        if (index != null) {
+            index.addAll(titles);
+        }
+    }
+
+    /**
+     * Flushes every change so far to disk: the on-disk catalog, if the library
+     * has one, and the journal, if it is journaled.
+     *
+     * @throws UncheckedIOException if the changes can't be flushed
+     */
+    public void sync() {
+        LibraryJournal log = journal;
+        if (log != null) {
+            log.sync();
+        }
+        DiskHoldings catalog = getDiskHoldings();
+        if (catalog != null) {
+            catalog.sync();
+        }
+    }
+
+    /**
+     * Closes the journal, if the library is journaled, and the on-disk
+     * catalog, if it has one, flushing both first. A library with an on-disk
+     * catalog can't be used after closing; one kept in memory can, but is no
+     * longer journaled.
+     *
+     * @throws UncheckedIOException if the changes can't be flushed
+     */
+    @Override
+    public void close() {
+        LibraryJournal log = journal;
+        if (log != null) {
+            log.close();
+        }
+        DiskHoldings catalog = getDiskHoldings();
+        if (catalog != null) {
+            catalog.close();
         }
     }
 
@@ -99,26 +573,154 @@ public class Library extends Building {
      * @return true if the book exists in the library, false otherwise
      */
     public boolean containsTitle(String title) {
-        return collection.containsKey(title);
+        return holdings.get(title) != Holdings.NONE;
     }
 
     /**
      * Checks if a specific book is available in the library.
      *
      * @param title The title of the book to check availability
-     * @return true if the book is available, false if it is checked out
+     * @return true if at least one copy is available, false if all are checked out or the title isn't found
      */
     public boolean isAvailable(String title) {
-        return collection.getOrDefault(title, false); // Returns false if not found
+        long state = holdings.get(title);
+        return state != Holdings.NONE && Holdings.available(state) > 0;
+    }
+
+    /**
+     * Finds titles containing the given text, ignoring case.
+     *
+     * @param text The text to search for, e.g. "gats"
+     * @return The matching titles, sorted alphabetically
+     */
+    public List<String> searchTitles(String text) {
+        if (scanSearches) {
+            return scanTitles(title -> TitleIndex.matchesContaining(title, text));
+        }
+        return held(titleIndex().containing(text));
+    }
+
+    /**
+     * Finds titles containing every one of the given words, in any order.
+     *
+     * @param words The words to search for, e.g. "great gatsby"
+     * @return The matching titles, sorted alphabetically
+     */
+    public List<String> searchTitlesWithAllWords(String words) {
+        if (scanSearches) {
+            return scanTitles(title -> TitleIndex.matchesAllWords(title, words));
+        }
+        return held(titleIndex().withAllWords(words));
+    }
+
+    /**
+     * Finds the titles that best match the query, best match first.
+     *
+     * @param query The words to search for
+     * @param limit The maximum number of titles to return
+     * @return The best matching titles
+     */
+    public List<String> searchTitlesRanked(String query, int limit) {
+        if (scanSearches) {
+            ArrayList<String> matches = new ArrayList<>();
+            ArrayList<Integer> scores = new ArrayList<>();
+            holdings.forEach((title, total, available) -> {
+                int score = TitleIndex.score(title, query);
+                if (score > 0) {
+                    matches.add(title);
+                    scores.add(score);
+                }
+            });
+            Integer[] order = new Integer[matches.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> scores.get(a).equals(scores.get(b))
+                    ? matches.get(a).compareTo(matches.get(b))
+                    : scores.get(b) - scores.get(a));
+            ArrayList<String> best = new ArrayList<>();
+            for (int i = 0; i < order.length && i < limit; i++) {
+                best.add(matches.get(order[i]));
+            }
+            return best;
+        }
+        return titleIndex().ranked(query, limit, this::containsTitle);
+    }
+
+    /* The index results still in the collection, in case a change is between the holdings and the index */
+    private List<String> held(List<String> titles) {
+        titles.removeIf(title -> !containsTitle(title));
+        return titles;
+    }
+
+    /* Titles in the collection that match, sorted alphabetically; reads the whole catalog */
+    private List<String> scanTitles(Predicate<String> matches) {
+        ArrayList<String> found = new ArrayList<>();
+        holdings.forEach((title, total, available) -> {
+            if (matches.test(title)) {
+                found.add(title);
+            }
+        });
+        Collections.sort(found);
+        return found;
     }
 
     /**
      * Prints the entire library collection and its status (Available/Checked Out).
+     * Titles held in more than one copy also show how many copies are on the shelf.
      */
     public void printCollection() {
-        System.out.println("Library Collection:");
-        for (String title : collection.keySet()) {
-            System.out.println(title + " - " + (collection.get(title) ? "Available" : "Checked Out"));
+        PrintWriter out = new PrintWriter(System.out);
+        writeCollection(out);
+        out.flush();
+    }
+
+    /**
+     * Writes the collection listing printed by printCollection() to a Writer.
+     * Collections of up to 10,000 titles are kept rendered until the next
+     * change; bigger ones are streamed a title at a time.
+     *
+     * @param out where to write the listing
+     * @throws UncheckedIOException if writing fails
+     */
+    public void writeCollection(Writer out) {
+        try {
+            Object cached = rendered.get();
+            if (cached instanceof String) {
+                out.write((String) cached);
+                return;
+            }
+            if (holdings.size() > RENDER_CACHE_TITLES || !rendered.compareAndSet(cached, RENDERING)) {
+                renderCollection(out); // Too big to keep, or someone else is rendering it
+                return;
+            }
+            StringBuilder listing = new StringBuilder();
+            renderCollection(listing);
+            String text = listing.toString();
+            rendered.compareAndSet(RENDERING, text); // Unless a change came in meanwhile
+            out.write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the collection of " + name + ".", e);
+        }
+    }
+
+    private void renderCollection(Appendable out) throws IOException {
+        String newline = System.lineSeparator();
+        out.append("Library Collection:").append(newline);
+        try {
+            holdings.forEach((title, total, available) -> {
+                try {
+                    out.append(title).append(" - ").append(available > 0 ? "Available" : "Checked Out");
+                    if (total > 1) {
+                        out.append(" (").append(String.valueOf(available)).append(" of ").append(String.valueOf(total)).append(" copies)");
+                    }
+                    out.append(newline);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
     }
 
@@ -164,8 +766,144 @@ public class Library extends Building {
         myLibrary.returnBook("The Great Gatsby");
         myLibrary.printCollection();
 
+        myLibrary.addTitle("The Great Gatsby: A Graphic Novel");
+        myLibrary.addTitle("Great Expectations");
+        System.out.println("Search \"gats\": " + myLibrary.searchTitles("gats"));
+        System.out.println("Search words \"gatsby great\": " + myLibrary.searchTitlesWithAllWords("gatsby great"));
+        System.out.println("Ranked \"the great gatsby\": " + myLibrary.searchTitlesRanked("the great gatsby", 3));
+
+        myLibrary.addCopies("The Great Gatsby", 2);
+        myLibrary.checkOut("The Great Gatsby");
+        System.out.println("Copies of The Great Gatsby on the shelf: " + myLibrary.availableCopiesOf("The Great Gatsby")
+                + " of " + myLibrary.copiesOf("The Great Gatsby"));
+
         myLibrary.removeTitle("1984");
         myLibrary.printCollection();
         myLibrary.showOptions();
+
+        // Bulk-load a generated catalog file
+        importDemo(50_000);
+
+        // Journal a library, then restore it from disk
+        journalDemo();
+
+        // Stress test: many desks race over the same titles
+        contentionDemo(8, 1_000, 200);
+    }
+
+    /**
+     * Writes a catalog file with the given number of generated titles (plus some
+     * duplicates) and imports it into a pre-sized library.
+     *
+     * @param nTitles Number of distinct titles to generate
+     */
+    private static void importDemo(int nTitles) {
+        try {
+            Path file = Files.createTempFile("catalog", ".txt");
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                for (int i = 0; i < nTitles; i++) {
+                    writer.write("Collected Works Volume " + i);
+                    writer.newLine();
+                    if (i % 10 == 0) { // Every tenth title appears twice
+                        writer.write("Collected Works Volume " + i);
+                        writer.newLine();
+                    }
+                }
+            }
+            Library library = new Library("Import Test Library", "1 Test Way", 1, nTitles);
+            System.out.println(library.importTitles(file));
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Journals some circulation activity, then restores a fresh library from the
+     * journal files and shows that the checkouts survived.
+     */
+    private static void journalDemo() {
+        try {
+            Path directory = Files.createTempDirectory("library-journal");
+            Library before = new Library("Journaled Library", "1 Test Way", 1);
+            LibraryJournal journal = LibraryJournal.open(before, directory);
+            before.addTitle("Beloved");
+            before.addTitle("Middlemarch");
+            before.checkOut("Beloved");
+            journal.snapshot();
+            before.addTitle("Persuasion");
+            before.checkOut("Persuasion");
+            journal.close();
+
+            long startTime = System.nanoTime();
+            Library after = new Library("Journaled Library", "1 Test Way", 1);
+            LibraryJournal.open(after, directory).close();
+            System.out.println("Recovered " + after.holdings.size() + " titles in "
+                    + String.format("%.3f", (System.nanoTime() - startTime) / 1e6) + "ms");
+            after.printCollection();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Runs several circulation-desk threads that all try to check out and return
+     * the same titles, then verifies that no title was ever checked out twice.
+     *
+     * @param nDesks  Number of concurrent desk threads
+     * @param nTitles Number of titles in the test library
+     * @param nRounds Number of passes each desk makes over the catalog
+     */
+    private static void contentionDemo(int nDesks, int nTitles, int nRounds) {
+        Library library = new Library("Stress Test Library", "1 Test Way", 1);
+        for (int i = 0; i < nTitles; i++) {
+            library.holdings.add("Title " + i, 1); // Skip addTitle's console output
+        }
+        AtomicInteger[] holders = new AtomicInteger[nTitles]; // Desks currently holding each title
+        for (int i = 0; i < nTitles; i++) {
+            holders[i] = new AtomicInteger();
+        }
+        AtomicInteger doubleCheckouts = new AtomicInteger();
+        AtomicInteger operations = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService desks = Executors.newFixedThreadPool(nDesks);
+
+        for (int d = 0; d < nDesks; d++) {
+            desks.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int round = 0; round < nRounds; round++) {
+                    for (int i = 0; i < nTitles; i++) {
+                        String title = "Title " + i;
+                        if (library.tryCheckOut(title)) {
+                            if (holders[i].incrementAndGet() > 1) {
+                                doubleCheckouts.incrementAndGet();
+                            }
+                            holders[i].decrementAndGet();
+                            library.tryReturn(title);
+                        }
+                        operations.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        desks.shutdown();
+        try {
+            desks.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.println("Contention test: " + nDesks + " desks, " + operations.get() + " checkout attempts in "
+                + String.format("%.3f", seconds) + "s (" + String.format("%.0f", operations.get() / seconds) + " ops/sec)");
+        System.out.println("Double checkouts detected: " + doubleCheckouts.get());
     }
 }
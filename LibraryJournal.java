@@ -0,0 +1,451 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Durable storage for a Library's collection: an append-only log of every
+ * addTitle, removeTitle, checkOut and returnBook, plus periodic snapshots of
+ * the whole collection.
+ *
+ * Library calls append() as each change happens; a background writer thread
+ * collects whatever has queued up, writes it to the log and fsyncs once for
+ * the whole batch (group commit). Once the log holds enough records, the
+ * writer replaces it with a fresh snapshot so recovery stays fast.
+ *
+ * Every log record stores the resulting copy counts of one title rather than a
+ * delta, so replaying the log over a snapshot is safe even when the
+ * snapshot already includes some of the logged changes. Each record ends in
+ * a CRC-32, so a record torn by a crash is dropped rather than misread, and
+ * the log names the snapshot it follows, so a log left over from an older
+ * snapshot is never replayed.
+ */
+public class LibraryJournal implements Closeable {
+
+    // Log record types
+    static final byte ADD = 1;
+    static final byte REMOVE = 2;
+    static final byte CHECK_OUT = 3;
+    static final byte RETURN = 4;
+    static final byte ADD_COPIES = 5;
+
+    // Control messages for the writer thread (never written to the log)
+    private static final byte SYNC = 10;
+    private static final byte SNAPSHOT = 11;
+    private static final byte CLOSE = 12;
+
+    private static final int SNAPSHOT_MAGIC = 0x4C534E50; // "LSNP"
+    private static final int SNAPSHOT_VERSION = 3;
+    private static final int LOG_MAGIC = 0x4C4C4F47;      // "LLOG"
+    private static final int LOG_HEADER_BYTES = 12;       // Magic, then the generation of the snapshot the log follows
+    private static final int MAX_TITLE_BYTES = 1 << 20;   // Longer lengths can only come from a damaged file
+    private static final int DEFAULT_SNAPSHOT_INTERVAL = 500_000; // Log records between automatic snapshots
+
+    private final Library library;
+    private final Path logFile;
+    private final Path snapshotFile;
+    private final int snapshotInterval;
+    private final LinkedBlockingQueue<Entry> queue;
+    private final Thread writer;
+
+    private FileChannel logChannel;
+    private DataOutputStream log;
+    private int recordsSinceSnapshot;
+    private long generation;              // Bumped by every snapshot; the log records which one it follows
+    private volatile IOException failure; // First write error, reported to later callers
+
+    /* One queued log record or control message */
+    private static final class Entry {
+        final byte op;
+        final String title;
+        final int total;           // Copies held after the change
+        final int available;       // Copies on the shelf after the change
+        final CountDownLatch done; // Only set for control messages that callers wait on
+
+        Entry(byte op, String title, int total, int available, CountDownLatch done) {
+            this.op = op;
+            this.title = title;
+            this.total = total;
+            this.available = available;
+            this.done = done;
+        }
+    }
+
+    private LibraryJournal(Library library, Path directory, int snapshotInterval) {
+        this.library = library;
+        this.logFile = directory.resolve("library.log");
+        this.snapshotFile = directory.resolve("library.snapshot");
+        this.snapshotInterval = snapshotInterval;
+        this.queue = new LinkedBlockingQueue<>();
+        this.writer = new Thread(this::writeLoop, "library-journal-" + library.getName());
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Restores a library from the snapshot and log in the given directory (if any),
+     * then journals every later change to the library into that directory.
+     * The library should be empty when it is opened.
+     *
+     * @param library   The library to restore and journal
+     * @param directory The directory holding the journal files (created if missing)
+     * @return The open journal
+     * @throws UncheckedIOException if the journal can't be read or created
+     */
+    public static LibraryJournal open(Library library, Path directory) {
+        return open(library, directory, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Overloaded open that sets how many log records are written between automatic snapshots.
+     *
+     * @param library          The library to restore and journal
+     * @param directory        The directory holding the journal files (created if missing)
+     * @param snapshotInterval Number of log records after which a snapshot is taken
+     * @return The open journal
+     * @throws UncheckedIOException if the journal can't be read or created
+     */
+    public static LibraryJournal open(Library library, Path directory, int snapshotInterval) {
+        try {
+            Files.createDirectories(directory);
+            LibraryJournal journal = new LibraryJournal(library, directory, snapshotInterval);
+            boolean logFollowsSnapshot = journal.recover();
+            journal.logChannel = FileChannel.open(journal.logFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            journal.log = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(journal.logChannel), 1 << 16));
+            if (!logFollowsSnapshot) {
+                journal.writeSnapshot(); // New, stale or old-format log: start over from what was recovered
+            }
+            library.attachJournal(journal);
+            journal.writer.start();
+            return journal;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open library journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Queues a change for the log. Called by Library while it holds the title's
+     * lock stripe, so records for the same title are queued in the order they happened.
+     *
+     * @param op        The record type
+     * @param title     The title that changed
+     * @param total     Copies held after the change
+     * @param available Copies on the shelf after the change
+     */
+    void append(byte op, String title, int total, int available) {
+        queue.add(new Entry(op, title, total, available, null));
+    }
+
+    /**
+     * Blocks until every change made before this call is on disk.
+     *
+     * @throws UncheckedIOException if the journal has failed to write
+     */
+    public void sync() {
+        await(SYNC);
+    }
+
+    /**
+     * Writes a snapshot of the whole collection and starts a new, empty log.
+     *
+     * @throws UncheckedIOException if the journal has failed to write
+     */
+    public void snapshot() {
+        await(SNAPSHOT);
+    }
+
+    /**
+     * Flushes outstanding changes and stops the writer thread.
+     * Changes made to the library after closing are no longer journaled.
+     *
+     * @throws UncheckedIOException if the journal has failed to write
+     */
+    @Override
+    public void close() {
+        library.detachJournal(); // Waits out appends already under way, so none lands after CLOSE
+        await(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* Sends a control message to the writer and waits for it to be handled */
+    private void await(byte op) {
+        CountDownLatch done = new CountDownLatch(1);
+        queue.add(new Entry(op, null, 0, 0, done));
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Library journal write failed", failure);
+        }
+    }
+
+    /* Writer thread: drain the queue, write the batch, fsync once, repeat */
+    private void writeLoop() {
+        ArrayList<Entry> batch = new ArrayList<>();
+        boolean open = true;
+        while (open) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch);
+            ArrayList<CountDownLatch> waiting = new ArrayList<>();
+            try {
+                for (Entry entry : batch) {
+                    if (entry.op == SNAPSHOT) {
+                        writeSnapshot();
+                    } else if (entry.op == CLOSE) {
+                        open = false;
+                    } else if (entry.op != SYNC) {
+                        byte[] title = entry.title.getBytes(StandardCharsets.UTF_8);
+                        log.writeByte(entry.op);
+                        log.writeInt(title.length);
+                        log.write(title);
+                        log.writeInt(entry.total);
+                        log.writeInt(entry.available);
+                        log.writeInt(checksum(entry.op, title, entry.total, entry.available));
+                        recordsSinceSnapshot++;
+                    }
+                    if (entry.done != null) {
+                        waiting.add(entry.done);
+                    }
+                }
+                log.flush();
+                logChannel.force(false); // One fsync for the whole batch
+                if (recordsSinceSnapshot >= snapshotInterval) {
+                    writeSnapshot();
+                }
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            for (CountDownLatch done : waiting) {
+                done.countDown();
+            }
+            batch.clear();
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+
+    /*
+     * Writes the collection to a temporary file, swaps it in atomically, then
+     * empties the log. Every record already written is covered by the snapshot;
+     * records still queued are replayed on top of it.
+     *
+     * The snapshot and the log header both carry a generation number. If the
+     * process dies after the new snapshot is in place but before the log is
+     * emptied, the log still names the old generation and recovery skips it
+     * rather than replaying older states over the newer snapshot.
+     */
+    private void writeSnapshot() throws IOException {
+        log.flush();
+        long next = generation + 1;
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(next);
+            out.writeInt(library.holdings().size()); // Lets recovery size the table once; may be off if titles change meanwhile
+            try {
+                library.holdings().forEach((title, total, available) -> {
+                    try {
+                        out.writeBoolean(true); // Another title follows
+                        writeTitle(out, title);
+                        out.writeInt(total);
+                        out.writeInt(available);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.writeBoolean(false);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logChannel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES).putInt(LOG_MAGIC).putLong(next).flip();
+        while (header.hasRemaining()) {
+            logChannel.write(header);
+        }
+        logChannel.force(true);
+        generation = next;
+        recordsSinceSnapshot = 0;
+    }
+
+    /*
+     * Loads the snapshot, then replays the log on top of it. Returns whether
+     * the log belongs to the snapshot and can be appended to; if not (no log
+     * yet, a log left over from an older snapshot, or one written before logs
+     * had headers), open() starts a new one with a fresh snapshot.
+     *
+     * The title index isn't rebuilt here: it is built by the first search, so
+     * opening a big library only costs reading the files.
+     */
+    private boolean recover() throws IOException {
+        int snapshotVersion = Files.exists(snapshotFile) ? loadSnapshot() : 0;
+        boolean logFollowsSnapshot = false;
+        long logSize = Files.exists(logFile) ? Files.size(logFile) : 0;
+        if (logSize > 0) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile), 1 << 16))) {
+                long validLength;
+                if (logSize >= LOG_HEADER_BYTES && in.readInt() == LOG_MAGIC) {
+                    logFollowsSnapshot = in.readLong() == generation;
+                    validLength = logFollowsSnapshot ? replay(in, true, LOG_HEADER_BYTES) : logSize;
+                } else {
+                    // Logs without a header come from before generations; replay them only over a snapshot of that age
+                    validLength = snapshotVersion == SNAPSHOT_VERSION ? logSize : replay(reopen(in), false, 0);
+                }
+                if (logFollowsSnapshot && validLength < logSize) {
+                    try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                        channel.truncate(validLength); // Drop a torn last record so new records follow good ones
+                    }
+                }
+            }
+        }
+        library.invalidateTitleIndex();
+        return logFollowsSnapshot;
+    }
+
+    /*
+     * Restores every title in the snapshot and returns its format version.
+     * The file is read through a memory mapping rather than a stream, since
+     * decoding a big collection field by field is most of recovery's cost.
+     */
+    private int loadSnapshot() throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int version = in.remaining() >= 8 && in.getInt() == SNAPSHOT_MAGIC ? in.getInt() : -1;
+            if (version != 2 && version != SNAPSHOT_VERSION) {
+                throw new IOException("Unrecognized library snapshot: " + snapshotFile);
+            }
+            if (version == SNAPSHOT_VERSION) { // Version 2 snapshots had no generation or title count
+                generation = in.getLong();
+                library.reserveTitles(in.getInt());
+            }
+            byte[] title = new byte[256];
+            while (in.get() != 0) {
+                int length = in.getInt();
+                if (length < 0 || length > MAX_TITLE_BYTES) {
+                    throw new DamagedRecordException("Impossible title length " + length + " in " + snapshotFile);
+                }
+                if (length > title.length) {
+                    title = new byte[Math.max(length, title.length * 2)];
+                }
+                in.get(title, 0, length);
+                library.restoreTitle(new String(title, 0, length, StandardCharsets.UTF_8), in.getInt(), in.getInt());
+            }
+            return version;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Library snapshot is cut short: " + snapshotFile, e);
+        }
+    }
+
+    private DataInputStream reopen(DataInputStream in) throws IOException {
+        in.close();
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile), 1 << 16));
+    }
+
+    /* Applies log records until the end of the log or a damaged record; returns where the good records end */
+    private long replay(DataInputStream in, boolean checksummed, long start) throws IOException {
+        long validLength = start;
+        try (in) {
+            while (true) {
+                byte op;
+                byte[] title;
+                int total;
+                int available;
+                try {
+                    op = in.readByte();
+                    title = readTitleBytes(in);
+                    total = in.readInt();
+                    available = in.readInt();
+                    if (checksummed && in.readInt() != checksum(op, title, total, available)) {
+                        break; // Torn or damaged record
+                    }
+                } catch (EOFException | DamagedRecordException e) {
+                    break; // End of log, or a record cut short by a crash
+                }
+                String text = new String(title, StandardCharsets.UTF_8);
+                if (op == REMOVE) {
+                    library.restoreRemoval(text);
+                } else {
+                    library.restoreTitle(text, total, available);
+                }
+                validLength += 1 + 4 + title.length + 4 + 4 + (checksummed ? 4 : 0);
+                recordsSinceSnapshot++;
+            }
+        }
+        return validLength;
+    }
+
+    /* A length field no intact record could have */
+    private static final class DamagedRecordException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        DamagedRecordException(String message) {
+            super(message);
+        }
+    }
+
+    /* Titles are stored as a byte count followed by UTF-8 bytes */
+    private static void writeTitle(DataOutputStream out, String title) throws IOException {
+        byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readTitleBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_TITLE_BYTES) {
+            throw new DamagedRecordException("Impossible title length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /* CRC-32 of a log record's fields, written after them so torn or damaged records are caught */
+    private static int checksum(byte op, byte[] title, int total, int available) {
+        CRC32 crc = new CRC32();
+        crc.update(op);
+        crc.update(title);
+        crc.update(ByteBuffer.allocate(8).putInt(total).putInt(available).flip());
+        return (int) crc.getValue();
+    }
+}
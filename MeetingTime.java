@@ -0,0 +1,205 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * When a course meets, as a bitset of five-minute slots across the week.
+ *
+ * Parses meeting times written the way the course catalog writes them:
+ * day letters (M T W R F S U) followed by a start time, with an optional end
+ * time, e.g. "TR 10:50", "MWF 9:25-10:15" or "M 7:00pm-9:30pm". Several
+ * meetings are separated with ";", e.g. "TR 1:20-2:35; F 10:00-10:50".
+ * Without an end time, classes meeting three or more days a week run 50
+ * minutes and others 75. Hours from 1 to 6 without "am" or "pm" are afternoon
+ * hours, as they are in the catalog. "TBA" (or nothing) means no fixed time.
+ * Text that can't be read can still be kept with parseOrUnread(), as a
+ * meeting time that overlaps nothing and that students can't enroll in.
+ *
+ * Each day from 7:00am to 11:00pm is 192 slots, exactly three longs, so two
+ * meeting times overlap exactly when some pair of their 21 words shares a bit.
+ */
+public class MeetingTime {
+
+    static final int WORDS = 21;                   // 7 days x 3 longs
+    private static final String DAYS = "MTWRFSU";
+    private static final int SLOT_MINUTES = 5;
+    private static final int DAY_START = 7 * 60;   // 7:00am
+    private static final int DAY_END = 23 * 60;    // 11:00pm
+    private static final int SLOTS_PER_DAY = (DAY_END - DAY_START) / SLOT_MINUTES;
+
+    private final String text;
+    private final long[] slots;
+    private final boolean readable;    // false if the text couldn't be parsed; slots are then empty
+
+    private MeetingTime(String text, long[] slots) {
+        this(text, slots, true);
+    }
+
+    private MeetingTime(String text, long[] slots, boolean readable) {
+        this.text = text;
+        this.slots = slots;
+        this.readable = readable;
+    }
+
+    /**
+     * Parses a meeting time.
+     *
+     * @param text the meeting time, e.g. "TR 10:50" or "MWF 9:25-10:15"
+     * @return the parsed meeting time
+     * @throws RuntimeException if the text isn't a meeting time this class understands
+     */
+    public static MeetingTime parse(String text) {
+        long[] slots = new long[WORDS];
+        String trimmed = text == null ? "" : text.trim();
+        if (trimmed.isEmpty() || trimmed.equalsIgnoreCase("TBA")) {
+            return new MeetingTime(trimmed, slots);
+        }
+        for (String meeting : trimmed.split(";")) {
+            String[] parts = meeting.trim().split("\\s+", 2);
+            if (parts.length != 2) {
+                throw new RuntimeException("Cannot read meeting time \"" + text + "\": expected days and a time, like \"TR 10:50\".");
+            }
+            String days = parts[0].toUpperCase(Locale.ROOT);
+            String[] times = parts[1].replace(" ", "").split("-");
+            int start = minutes(times[0], text);
+            int end = times.length > 1 ? minutes(times[1], text) : start + (days.length() >= 3 ? 50 : 75);
+            if (times.length > 2 || start < DAY_START || end > DAY_END || end <= start) {
+                throw new RuntimeException("Cannot read meeting time \"" + text + "\": classes must fall between 7:00am and 11:00pm.");
+            }
+            int first = (start - DAY_START) / SLOT_MINUTES;
+            int last = (end - DAY_START + SLOT_MINUTES - 1) / SLOT_MINUTES; // Exclusive, so back-to-back classes don't clash
+            for (char d : days.toCharArray()) {
+                int day = DAYS.indexOf(d);
+                if (day < 0) {
+                    throw new RuntimeException("Cannot read meeting time \"" + text + "\": unknown day '" + d + "'.");
+                }
+                for (int slot = day * SLOTS_PER_DAY + first; slot < day * SLOTS_PER_DAY + last; slot++) {
+                    slots[slot >>> 6] |= 1L << slot;
+                }
+            }
+        }
+        return new MeetingTime(trimmed, slots);
+    }
+
+    /**
+     * Parses a meeting time, keeping text that can't be parsed (e.g. "Mondays
+     * after lunch") as an unreadable meeting time instead of throwing.
+     *
+     * @param text the meeting time
+     * @return the parsed meeting time, or an unreadable one that overlaps nothing
+     */
+    public static MeetingTime parseOrUnread(String text) {
+        try {
+            return parse(text);
+        } catch (RuntimeException e) {
+            return new MeetingTime(text == null ? "" : text.trim(), new long[WORDS], false);
+        }
+    }
+
+    /**
+     * Checks whether the meeting time was parsed, so its slots are known.
+     *
+     * @return false if it came from text parseOrUnread() couldn't read
+     */
+    public boolean isReadable() {
+        return readable;
+    }
+
+    /* Minutes after midnight for a time like "10:50", "1:20" (afternoon) or "7pm" */
+    private static int minutes(String time, String text) {
+        String t = time.toLowerCase(Locale.ROOT);
+        boolean pm = t.endsWith("pm");
+        boolean am = t.endsWith("am");
+        if (pm || am) {
+            t = t.substring(0, t.length() - 2);
+        }
+        try {
+            int colon = t.indexOf(':');
+            int hour = Integer.parseInt(colon < 0 ? t : t.substring(0, colon));
+            int minute = colon < 0 ? 0 : Integer.parseInt(t.substring(colon + 1));
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || ((am || pm) && (hour < 1 || hour > 12))) {
+                throw new NumberFormatException();
+            }
+            if (pm && hour < 12 || !am && !pm && hour >= 1 && hour <= 6) {
+                hour += 12;
+            } else if (am && hour == 12) {
+                hour = 0;
+            }
+            return hour * 60 + minute;
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Cannot read meeting time \"" + text + "\": \"" + time + "\" isn't a time of day.");
+        }
+    }
+
+    /**
+     * Checks whether two meeting times share any five-minute slot.
+     *
+     * @param other the other meeting time
+     * @return true if the two meet at the same time on some day
+     */
+    public boolean overlaps(MeetingTime other) {
+        return overlaps(other.slots);
+    }
+
+    /* Whether this meeting time shares a slot with a schedule's combined slots */
+    boolean overlaps(long[] busy) {
+        for (int w = 0; w < WORDS; w++) {
+            if ((slots[w] & busy[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Adds this meeting time's slots to a schedule's combined slots */
+    void addTo(long[] busy) {
+        for (int w = 0; w < WORDS; w++) {
+            busy[w] |= slots[w];
+        }
+    }
+
+    /* Removes this meeting time's slots from a schedule that never overlaps itself */
+    void removeFrom(long[] busy) {
+        for (int w = 0; w < WORDS; w++) {
+            busy[w] &= ~slots[w];
+        }
+    }
+
+    /**
+     * Returns how many minutes a week this meeting time takes up.
+     *
+     * @return minutes per week, in five-minute steps
+     */
+    public int getMinutesPerWeek() {
+        int n = 0;
+        for (long word : slots) {
+            n += Long.bitCount(word);
+        }
+        return n * SLOT_MINUTES;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof MeetingTime && readable == ((MeetingTime) other).readable
+                && Arrays.equals(slots, ((MeetingTime) other).slots);
+    }
+
+    @Override
+    public int hashCode() {
+        return readable ? Arrays.hashCode(slots) : -1;
+    }
+
+    public String toString() {
+        return this.text;
+    }
+
+    public static void main(String[] args) {
+        MeetingTime oop = parse("TR 10:50");
+        MeetingTime data = parse("TR 12:05-1:20");
+        MeetingTime lab = parse("R 11:30-12:30");
+        System.out.println(oop + " overlaps " + data + "? " + oop.overlaps(data));
+        System.out.println(oop + " overlaps " + lab + "? " + oop.overlaps(lab));
+        System.out.println(parse("MWF 9:25") + " meets " + parse("MWF 9:25").getMinutesPerWeek() + " minutes a week");
+        MeetingTime vague = parseOrUnread("Mondays after lunch");
+        System.out.println(vague + " readable? " + vague.isReadable() + ", overlaps " + oop + "? " + vague.overlaps(oop));
+    }
+}
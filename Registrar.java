@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Works through a registration-day rush of enroll and drop requests on
+ * several threads at once.
+ *
+ * Each request locks only the student it is for (see Student.enroll), and
+ * seats are claimed with a compare-and-set on the course, so requests for
+ * different students never wait on each other and a course never goes over
+ * capacity.
+ */
+public class Registrar {
+
+    private static final int REQUESTS_PER_CLAIM = 256; // Requests a thread takes from the shared list at a time
+
+    private int nThreads;
+
+    /**
+     * One student asking to enroll in or drop a course.
+     */
+    public static class Request {
+        private Student student;
+        private Course course;
+        private boolean drop;
+
+        /**
+         * Constructs a request.
+         *
+         * @param student the student
+         * @param course  the course
+         * @param drop    true to drop the course, false to enroll
+         */
+        public Request(Student student, Course course, boolean drop) {
+            this.student = student;
+            this.course = course;
+            this.drop = drop;
+        }
+
+        Student.EnrollResult apply() {
+            return drop ? student.drop(course) : student.enroll(course);
+        }
+    }
+
+    /**
+     * Constructs a registrar that uses one thread per processor.
+     */
+    public Registrar() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Overloaded constructor with a set number of worker threads.
+     *
+     * @param nThreads the number of threads working through requests
+     */
+    public Registrar(int nThreads) {
+        if (nThreads < 1) {
+            throw new RuntimeException("A registrar needs at least one thread.");
+        }
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * Processes every request, spread over the registrar's threads. Requests
+     * for the same student may be handled in any order.
+     *
+     * @param requests the requests
+     * @return how many requests ended each way
+     */
+    public Map<Student.EnrollResult, Long> process(List<Request> requests) {
+        AtomicInteger next = new AtomicInteger();
+        LongAdder[] counts = new LongAdder[Student.EnrollResult.values().length];
+        for (int r = 0; r < counts.length; r++) {
+            counts[r] = new LongAdder();
+        }
+        CountDownLatch done = new CountDownLatch(nThreads);
+        for (int t = 0; t < nThreads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    int[] local = new int[counts.length];
+                    for (int from; (from = next.getAndAdd(REQUESTS_PER_CLAIM)) < requests.size(); ) {
+                        int to = Math.min(requests.size(), from + REQUESTS_PER_CLAIM);
+                        for (int i = from; i < to; i++) {
+                            local[requests.get(i).apply().ordinal()]++;
+                        }
+                    }
+                    for (int r = 0; r < local.length; r++) {
+                        counts[r].add(local[r]);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "registrar-" + t);
+            worker.start();
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        EnumMap<Student.EnrollResult, Long> result = new EnumMap<>(Student.EnrollResult.class);
+        for (Student.EnrollResult r : Student.EnrollResult.values()) {
+            result.put(r, counts[r.ordinal()].sum());
+        }
+        return result;
+    }
+
+    /**
+     * Simulates registration day: 50,000 students send 400,000 enroll and drop
+     * requests for 400 courses, then checks that no course is over capacity
+     * and no student has two classes at once.
+     */
+    public static void main(String[] args) {
+        String[] days = {"MWF", "TR", "MW", "TR", "M", "W"};
+        String[] times = {"8:00", "9:25", "10:50", "12:10", "1:20", "2:45", "4:10", "7:00pm"};
+        Random random = new Random(2025);
+        CourseCatalog catalog = new CourseCatalog();
+        ArrayList<Course> courses = new ArrayList<>();
+        for (int c = 0; c < 400; c++) {
+            String when = days[random.nextInt(days.length)] + " " + times[random.nextInt(times.length)];
+            courses.add(catalog.intern("Course " + c, "CSC" + (100 + c), when, 20 + random.nextInt(100)));
+        }
+        ArrayList<Student> students = new ArrayList<>();
+        for (int s = 0; s < 50_000; s++) {
+            students.add(new Student("Student " + s, "S" + s, 2026 + s % 4));
+        }
+        ArrayList<Request> requests = new ArrayList<>();
+        for (int r = 0; r < 400_000; r++) {
+            Course course = courses.get((int) (courses.size() * Math.pow(random.nextDouble(), 2))); // Some courses are much more popular
+            requests.add(new Request(students.get(random.nextInt(students.size())), course, random.nextInt(5) == 0));
+        }
+
+        long start = System.nanoTime();
+        Map<Student.EnrollResult, Long> results = new Registrar(8).process(requests);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Processed %,d requests in %.3fs (%,.0f requests/sec): %s",
+                requests.size(), seconds, requests.size() / seconds, results));
+
+        long seats = 0;
+        long full = 0;
+        for (Course course : courses) {
+            if (course.getEnrolled() > course.getCapacity() || catalog.getRosterSize(course) != course.getEnrolled()) {
+                throw new RuntimeException(course + " is over capacity or its roster is wrong!");
+            }
+            seats += course.getEnrolled();
+            full += course.getSeatsLeft() == 0 ? 1 : 0;
+        }
+        long enrollments = 0;
+        for (Student s : students) {
+            List<Course> classes = s.getClasses();
+            enrollments += classes.size();
+            for (int i = 0; i < classes.size(); i++) {
+                for (int j = i + 1; j < classes.size(); j++) {
+                    if (classes.get(i).getSchedule().overlaps(classes.get(j).getSchedule())) {
+                        throw new RuntimeException(s + " has two classes at once!");
+                    }
+                }
+            }
+        }
+        System.out.println(seats + " seats taken, " + enrollments + " enrollments on student schedules, "
+                + full + " of " + courses.size() + " courses full, no time conflicts");
+    }
+}
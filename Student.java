@@ -1,23 +1,163 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 
 public class Student {
     // Attributes 
     private String name; 
     private String id; 
     private int classYear; 
-    private ArrayList<Course> classes; 
+    private ArrayList<Course> classes;    // Classes made directly with new Course(...)
+    private CourseCatalog catalog;        // Catalog the classes in classIds come from
+    private int[] classIds;               // Classes from that catalog, by id
+    private int nClassIds;
+    private long[] busy;                  // Time slots taken by classes, see MeetingTime
+
+    /* What happened to an enroll() or drop() request */
+    public enum EnrollResult {
+        ENROLLED, DROPPED, ALREADY_ENROLLED, NOT_ENROLLED, TIME_CONFLICT, COURSE_FULL, UNREADABLE_TIME
+    }
 
     public Student(String name, String id, int classYear) {
         this.name = name;
         this.id = id;
         this.classYear = classYear;
         this.classes = new ArrayList<>(); 
+        this.classIds = new int[0];
+        this.busy = new long[MeetingTime.WORDS];
     }
 
     public String getName() {
         return this.name; 
     }
 
+    public String getId() {
+        return this.id;
+    }
+
+    public int getClassYear() {
+        return this.classYear;
+    }
+
+    /**
+     * Enrolls the student in a course, unless they already take it, its meeting
+     * time couldn't be read, it meets at the same time as one of their classes,
+     * or it is full. Safe to call
+     * from many threads at once, for the same or different students.
+     *
+     * @param course the course
+     * @return ENROLLED, or why the student couldn't enroll
+     */
+    public synchronized EnrollResult enroll(Course course) {
+        if (takes(course)) {
+            return EnrollResult.ALREADY_ENROLLED;
+        }
+        if (!course.getSchedule().isReadable()) {
+            return EnrollResult.UNREADABLE_TIME;
+        }
+        if (course.getSchedule().overlaps(busy)) {
+            return EnrollResult.TIME_CONFLICT;
+        }
+        if (!course.reserveSeat()) {
+            return EnrollResult.COURSE_FULL;
+        }
+        if (isFromCatalog(course)) {
+            catalog = course.getCatalog();
+            if (nClassIds == classIds.length) {
+                classIds = Arrays.copyOf(classIds, Math.max(4, nClassIds * 2));
+            }
+            classIds[nClassIds++] = course.getCatalogId();
+            catalog.addToRoster(course, this);
+        } else {
+            classes.add(course);
+        }
+        course.getSchedule().addTo(busy);
+        return EnrollResult.ENROLLED;
+    }
+
+    /**
+     * Drops a course and gives its seat back.
+     *
+     * @param course the course
+     * @return DROPPED, or NOT_ENROLLED if the student wasn't taking it
+     */
+    public synchronized EnrollResult drop(Course course) {
+        if (isFromCatalog(course)) {
+            int i = indexOfId(course.getCatalogId());
+            if (i < 0) {
+                return EnrollResult.NOT_ENROLLED;
+            }
+            classIds[i] = classIds[--nClassIds];
+            catalog.removeFromRoster(course, this);
+        } else if (!classes.remove(course)) {
+            return EnrollResult.NOT_ENROLLED;
+        }
+        course.getSchedule().removeFrom(busy); // Classes never overlap, so these slots were the course's alone
+        course.releaseSeat();
+        return EnrollResult.DROPPED;
+    }
+
+    /**
+     * Checks whether the student is enrolled in a course.
+     *
+     * @param course the course
+     * @return true if the course is on the student's schedule
+     */
+    public synchronized boolean takes(Course course) {
+        return isFromCatalog(course) ? indexOfId(course.getCatalogId()) >= 0 : classes.contains(course);
+    }
+
+    /* Catalog courses are kept as ids, as long as they all come from the same catalog */
+    private boolean isFromCatalog(Course course) {
+        return course.getCatalog() != null && (catalog == null || catalog == course.getCatalog());
+    }
+
+    private int indexOfId(int courseId) {
+        for (int i = 0; i < nClassIds; i++) {
+            if (classIds[i] == courseId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether a course meets at the same time as one of the student's classes.
+     *
+     * @param course the course
+     * @return true if it clashes with the student's schedule
+     */
+    public synchronized boolean hasConflict(Course course) {
+        return course.getSchedule().overlaps(busy);
+    }
+
+    public synchronized List<Course> getClasses() {
+        ArrayList<Course> all = new ArrayList<>(nClassIds + classes.size());
+        for (int i = 0; i < nClassIds; i++) {
+            all.add(catalog.get(classIds[i]));
+        }
+        all.addAll(this.classes);
+        return all;
+    }
+
+    /* Students are the same person if they have the same student id */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Student)) {
+            return false;
+        }
+        return Objects.equals(this.id, ((Student) other).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(this.id);
+    }
+
     public String toString() {
         return this.name + " ID: " + this.id + " Class Year: " + this.classYear;
     }
@@ -28,6 +168,17 @@ public class Student {
         Course csc120 = new Course("OOP", "CSC120", "TR 10:50");
         ab.classes.add(csc120);
         System.out.println(ab.classes);
+
+        Student cd = new Student("Cd", "9910abc", 2027);
+        Course csc210 = new Course("Data Structures", "CSC210", "TR 9:25", 1);
+        Course mth111 = new Course("Calculus I", "MTH111", "MWF 9:25");
+        System.out.println("Enroll in " + csc210 + ": " + cd.enroll(csc210));
+        System.out.println("Enroll in " + csc120 + ": " + cd.enroll(csc120));
+        System.out.println("Enroll in " + mth111 + ": " + cd.enroll(mth111));
+        System.out.println("Enroll Ab in " + csc210 + ": " + ab.enroll(csc210));
+        System.out.println("Drop " + csc210 + ": " + cd.drop(csc210) + ", then Ab: " + ab.enroll(csc210));
+        Course seminar = new Course("Senior Seminar", "CSC400", "Mondays after lunch");
+        System.out.println("Enroll in " + seminar + ": " + cd.enroll(seminar));
     }
     
 }
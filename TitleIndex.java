@@ -0,0 +1,514 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * An inverted index over book titles, used by Library for title search.
+ * Titles are indexed by their words and by every 3-character slice (trigram)
+ * of the lower-cased title, so substring, multi-word and ranked queries only
+ * look at titles that share terms with the query instead of the whole catalog.
+ *
+ * Each title gets an int id, and a posting list is a growable int array of
+ * the ids of the titles containing a term, so the index costs a few bytes per
+ * term of each title rather than a set entry. Removing a title only retires
+ * its id; queries skip retired ids, and once there are half as many retired
+ * ids as live titles every posting list is swept clean of them and the ids
+ * are handed out again, so churn doesn't grow the index.
+ *
+ * The index is safe to update from several threads at once: each posting
+ * list is changed under its own lock, and posting lists are never removed
+ * from the maps, so an update can't race with one that empties a list.
+ * Queries and additions share a read lock that a sweep takes exclusively,
+ * so no id is reused while a query or addition could still be holding it.
+ */
+public class TitleIndex {
+
+    private static final int GRAM = 3;             // Length of the n-grams used for substring search
+    private static final int MIN_PURGE = 1_024;    // Fewest retired ids worth sweeping the postings for
+
+    private final ConcurrentHashMap<String, Posting> words;  // Word -> ids of titles containing it
+    private final ConcurrentSkipListSet<String> wordList;    // Every word, sorted for prefix search
+    private final ConcurrentHashMap<String, Posting> grams;  // Trigram -> ids of titles containing it
+    private final ConcurrentHashMap<String, Integer> ids;    // Title -> id
+    private volatile String[] titles;                        // Id -> title, null once removed
+    private int nextId;                                      // Ids below this have been handed out; guarded by this
+    private IdList retired;                                  // Removed ids still in postings; guarded by this
+    private IdList free;                                     // Swept ids ready for reuse; guarded by this
+    private final ReentrantReadWriteLock sweep;              // Held exclusively while retired ids are swept
+
+    /* The ids of the titles containing one term, in the order they were added */
+    private static final class Posting {
+        private int[] ids = new int[2];
+        private int size;
+
+        synchronized void add(int[] batch, int count) {
+            if (size + count > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(size + count, ids.length + (ids.length >> 1)));
+            }
+            System.arraycopy(batch, 0, ids, size, count);
+            size += count;
+        }
+
+        synchronized int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        /* Drops the ids of removed titles */
+        synchronized void purge(TitleIndex index) {
+            String[] titles = index.titles; // Read under the lock, so it covers every id held here
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (titles[ids[i]] != null) {
+                    ids[kept++] = ids[i];
+                }
+            }
+            size = kept;
+            if (ids.length > 16 && kept < ids.length / 4) {
+                ids = Arrays.copyOf(ids, Math.max(2, kept * 2));
+            }
+        }
+    }
+
+    /**
+     * Constructs an empty index.
+     */
+    public TitleIndex() {
+        words = new ConcurrentHashMap<>();
+        wordList = new ConcurrentSkipListSet<>();
+        grams = new ConcurrentHashMap<>();
+        ids = new ConcurrentHashMap<>();
+        titles = new String[64];
+        retired = new IdList();
+        free = new IdList();
+        sweep = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Adds a title to the index.
+     *
+     * @param title The title to index
+     */
+    public void add(String title) {
+        addAll(List.of(title));
+    }
+
+    /**
+     * Adds many titles to the index at once. Postings are grouped by term first,
+     * so each word or trigram shared by the batch is updated once rather than
+     * once per title. Titles already in the index are skipped.
+     *
+     * @param titles The titles to index
+     */
+    public void addAll(Collection<String> titles) {
+        sweep.readLock().lock();
+        try {
+            addIds(titles, assignIds(titles));
+        } finally {
+            sweep.readLock().unlock();
+        }
+    }
+
+    private void addIds(Collection<String> titles, int[] batch) {
+        HashMap<String, IdList> wordPostings = new HashMap<>();
+        HashMap<String, IdList> gramPostings = new HashMap<>();
+        int i = 0;
+        for (String title : titles) {
+            int id = batch[i++];
+            if (id < 0) {
+                continue;
+            }
+            String normalized = normalize(title);
+            int start = -1;
+            for (int c = 0; c <= normalized.length(); c++) { // Same words as tokenize(), without building a set
+                if (c < normalized.length() && isWordChar(normalized, c)) {
+                    start = start < 0 ? c : start;
+                } else if (start >= 0) {
+                    wordPostings.computeIfAbsent(normalized.substring(start, c), k -> new IdList()).add(id);
+                    start = -1;
+                }
+            }
+            for (int c = 0; c + GRAM <= normalized.length(); c++) {
+                gramPostings.computeIfAbsent(normalized.substring(c, c + GRAM), k -> new IdList()).add(id);
+            }
+        }
+        wordPostings.forEach((word, list) -> posting(words, word).add(list.ids, list.size));
+        gramPostings.forEach((gram, list) -> posting(grams, gram).add(list.ids, list.size));
+    }
+
+    /**
+     * Removes a title from the index.
+     *
+     * @param title The title to remove
+     */
+    public void remove(String title) {
+        boolean purge;
+        synchronized (this) {
+            Integer id = ids.remove(title);
+            if (id == null) {
+                return;
+            }
+            titles[id] = null;
+            retired.add(id);
+            purge = retired.size >= MIN_PURGE && retired.size * 2 > ids.size();
+        }
+        if (purge) {
+            purge();
+        }
+    }
+
+    /* Sweeps the retired ids out of every posting list, then frees them for reuse */
+    private void purge() {
+        sweep.writeLock().lock();
+        try {
+            IdList swept;
+            synchronized (this) {
+                if (retired.size < MIN_PURGE) {
+                    return; // Another thread's sweep got here first
+                }
+                swept = retired;
+                retired = new IdList();
+            }
+            for (Posting posting : words.values()) {
+                posting.purge(this);
+            }
+            for (Posting posting : grams.values()) {
+                posting.purge(this);
+            }
+            synchronized (this) {
+                for (int i = 0; i < swept.size; i++) {
+                    free.add(swept.ids[i]);
+                }
+            }
+        } finally {
+            sweep.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds titles containing the given text, ignoring case.
+     * Queries shorter than three characters match titles with a word starting with the query.
+     *
+     * @param text The text to look for
+     * @return The matching titles, sorted alphabetically
+     */
+    public List<String> containing(String text) {
+        return reading(() -> findContaining(text));
+    }
+
+    private List<String> findContaining(String text) {
+        String query = normalize(text);
+        if (query.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (query.length() < GRAM) {
+            return sorted(wordsStartingWith(query));
+        }
+        ArrayList<Posting> postings = new ArrayList<>();
+        for (String gram : grams(query)) {
+            Posting posting = grams.get(gram);
+            if (posting == null) {
+                return new ArrayList<>(); // Some slice of the query appears nowhere
+            }
+            postings.add(posting);
+        }
+        HashSet<String> matches = new HashSet<>();
+        int[] found = smallest(postings).toArray();
+        String[] current = titles; // Read after the postings, so it covers every id they hold
+        for (int id : found) {
+            String title = current[id];
+            if (title != null && normalize(title).contains(query)) { // Trigrams can match out of order, so confirm
+                matches.add(title);
+            }
+        }
+        return sorted(matches);
+    }
+
+    /**
+     * Finds titles that contain every word of the query, in any order, ignoring case.
+     *
+     * @param query One or more words
+     * @return The matching titles, sorted alphabetically
+     */
+    public List<String> withAllWords(String query) {
+        return reading(() -> findAllWords(query));
+    }
+
+    private List<String> findAllWords(String query) {
+        Set<String> wanted = tokenize(normalize(query));
+        ArrayList<Posting> postings = new ArrayList<>();
+        for (String word : wanted) {
+            Posting posting = words.get(word);
+            if (posting == null) {
+                return new ArrayList<>();
+            }
+            postings.add(posting);
+        }
+        if (postings.isEmpty()) {
+            return new ArrayList<>();
+        }
+        HashSet<String> matches = new HashSet<>();
+        int[] found = smallest(postings).toArray(); // Walk the rarest word, then check the title has the rest
+        String[] current = titles;
+        for (int id : found) {
+            String title = current[id];
+            if (title != null && tokenize(normalize(title)).containsAll(wanted)) {
+                matches.add(title);
+            }
+        }
+        return sorted(matches);
+    }
+
+    /**
+     * Ranks titles by how well they match the query. Each query word found in a
+     * title scores a point, and titles containing the whole query as a phrase
+     * get a bonus. Ties are broken alphabetically.
+     *
+     * @param query One or more words
+     * @param limit The maximum number of titles to return
+     * @return The best matching titles, best first
+     */
+    public List<String> ranked(String query, int limit) {
+        return ranked(query, limit, title -> true);
+    }
+
+    /**
+     * Overloaded ranked() that only considers titles the filter accepts, so
+     * the limit counts accepted titles.
+     *
+     * @param query  One or more words
+     * @param limit  The maximum number of titles to return
+     * @param accept Which titles may be returned
+     * @return The best matching titles, best first
+     */
+    public List<String> ranked(String query, int limit, Predicate<String> accept) {
+        return reading(() -> findRanked(query, limit, accept));
+    }
+
+    private List<String> findRanked(String query, int limit, Predicate<String> accept) {
+        String phrase = normalize(query);
+        HashMap<String, Integer> scores = new HashMap<>();
+        for (String word : tokenize(phrase)) {
+            Posting posting = words.get(word);
+            if (posting != null) {
+                int[] found = posting.toArray();
+                String[] current = titles;
+                for (int id : found) {
+                    if (current[id] != null) {
+                        scores.merge(current[id], 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        ArrayList<Map.Entry<String, Integer>> results = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+            if (!accept.test(entry.getKey())) {
+                continue;
+            }
+            if (normalize(entry.getKey()).contains(phrase)) {
+                entry.setValue(entry.getValue() + 1);
+            }
+            results.add(entry);
+        }
+        results.sort((a, b) -> a.getValue().equals(b.getValue())
+                ? a.getKey().compareTo(b.getKey())
+                : b.getValue() - a.getValue());
+        ArrayList<String> best = new ArrayList<>();
+        for (int i = 0; i < results.size() && i < limit; i++) {
+            best.add(results.get(i).getKey());
+        }
+        return best;
+    }
+
+    /*
+     * The same matching rules applied to one title at a time, for catalogs
+     * too big to index (see Library's disk-backed mode).
+     */
+    static boolean matchesContaining(String title, String text) {
+        String query = normalize(text);
+        if (query.isEmpty()) {
+            return false;
+        }
+        if (query.length() < GRAM) {
+            for (String word : tokenize(normalize(title))) {
+                if (word.startsWith(query)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return normalize(title).contains(query);
+    }
+
+    static boolean matchesAllWords(String title, String query) {
+        Set<String> wanted = tokenize(normalize(query));
+        return !wanted.isEmpty() && tokenize(normalize(title)).containsAll(wanted);
+    }
+
+    /* The score ranked() would give the title, or 0 if it wouldn't be listed */
+    static int score(String title, String query) {
+        String phrase = normalize(query);
+        String normalized = normalize(title);
+        Set<String> words = tokenize(normalized);
+        int score = 0;
+        for (String word : tokenize(phrase)) {
+            if (words.contains(word)) {
+                score++;
+            }
+        }
+        return score > 0 && normalized.contains(phrase) ? score + 1 : score;
+    }
+
+    /*
+     * Gives each title not already indexed an id, reusing swept ids first;
+     * returns the ids in order, -1 for titles skipped
+     */
+    private synchronized int[] assignIds(Collection<String> batch) {
+        int[] assigned = new int[batch.size()];
+        int needed = nextId + Math.max(0, batch.size() - free.size);
+        if (needed > titles.length) {
+            titles = Arrays.copyOf(titles, Math.max(needed, titles.length * 2));
+        }
+        String[] current = titles;
+        int i = 0;
+        for (String title : batch) {
+            if (ids.containsKey(title)) {
+                assigned[i++] = -1;
+            } else {
+                int id = free.size > 0 ? free.ids[--free.size] : nextId++;
+                current[id] = title;
+                ids.put(title, id);
+                assigned[i++] = id;
+            }
+        }
+        return assigned;
+    }
+
+    /* Runs a query under the read lock, so no id it finds is reused before it reads the title */
+    private <T> T reading(Supplier<T> query) {
+        sweep.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            sweep.readLock().unlock();
+        }
+    }
+
+    /* The term's posting list, created if this is the term's first title */
+    private Posting posting(ConcurrentHashMap<String, Posting> index, String term) {
+        return index.computeIfAbsent(term, k -> {
+            if (index == words) {
+                wordList.add(k);
+            }
+            return new Posting();
+        });
+    }
+
+    /* Titles with at least one word starting with the given prefix */
+    private Set<String> wordsStartingWith(String prefix) {
+        Set<String> result = new HashSet<>();
+        for (String word : wordList.subSet(prefix, prefix + Character.MAX_VALUE)) {
+            Posting posting = words.get(word);
+            if (posting == null) {
+                continue; // Still being created
+            }
+            int[] found = posting.toArray();
+            String[] current = titles;
+            for (int id : found) {
+                if (current[id] != null) {
+                    result.add(current[id]);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Posting smallest(List<Posting> postings) {
+        Posting smallest = postings.get(0);
+        for (Posting posting : postings) {
+            if (posting.size() < smallest.size()) {
+                smallest = posting;
+            }
+        }
+        return smallest;
+    }
+
+    /* A plain growable list of ids, used to group a batch's postings by term and to track retired ids */
+    private static final class IdList {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return; // The term appears twice in the same title
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT).trim();
+    }
+
+    /* The distinct runs of letters and digits in the text */
+    private static Set<String> tokenize(String normalized) {
+        Set<String> tokens = new HashSet<>();
+        int start = -1;
+        for (int c = 0; c <= normalized.length(); c++) {
+            if (c < normalized.length() && isWordChar(normalized, c)) {
+                start = start < 0 ? c : start;
+            } else if (start >= 0) {
+                tokens.add(normalized.substring(start, c));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /* Whether the char at i is part of a word: a letter or number, or half of a surrogate pair that is one */
+    private static boolean isWordChar(String text, int i) {
+        char ch = text.charAt(i);
+        if (ch < 0x80) {
+            return ch >= 'a' && ch <= 'z' || ch >= '0' && ch <= '9' || ch >= 'A' && ch <= 'Z';
+        }
+        int cp = Character.isLowSurrogate(ch) && i > 0 && Character.isHighSurrogate(text.charAt(i - 1))
+                ? text.codePointAt(i - 1) : text.codePointAt(i);
+        if (Character.isLetter(cp)) {
+            return true;
+        }
+        int type = Character.getType(cp);
+        return type == Character.DECIMAL_DIGIT_NUMBER || type == Character.LETTER_NUMBER || type == Character.OTHER_NUMBER;
+    }
+
+    private static Set<String> grams(String normalized) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + GRAM <= normalized.length(); i++) {
+            result.add(normalized.substring(i, i + GRAM));
+        }
+        return result;
+    }
+
+    private static List<String> sorted(Set<String> titles) {
+        ArrayList<String> list = new ArrayList<>(titles);
+        Collections.sort(list);
+        return list;
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * One visitor's trip through a Building, started with Building.visit().
+ *
+ * Unlike the building's own enter()/goToFloor()/exit(), which track a single
+ * visitor, each Visit keeps its own floor, so any number of visitors can be
+ * inside the same building at once, each on its own thread. The building keeps
+ * a live head count per floor that every visit updates as it moves.
+ *
+ * A Visit belongs to one visitor and isn't meant to be shared between threads.
+ */
+public class Visit {
+
+    private Building building;
+    private int floor; // The floor this visitor is on, or -1 once they have left
+
+    /* Started by Building.visit(), which has already counted the visitor on floor 1 */
+    Visit(Building building) {
+        this.building = building;
+        this.floor = 1;
+    }
+
+    public Building getBuilding() {
+        return this.building;
+    }
+
+    /**
+     * Returns the floor this visitor is on.
+     *
+     * @return the floor number, or -1 if the visitor has left
+     */
+    public int getFloor() {
+        return this.floor;
+    }
+
+    public boolean isInside() {
+        return this.floor != -1;
+    }
+
+    /**
+     * Moves this visitor to a floor, following the building's rules (a house
+     * without an elevator only allows one floor at a time).
+     *
+     * @param floorNum the floor to go to
+     * @throws RuntimeException if the visitor has left, the floor doesn't exist or the building doesn't allow the move
+     */
+    public void goToFloor(int floorNum) {
+        if (this.floor == -1) {
+            throw new RuntimeException("This visitor has left " + building.getName() + ". Must call visit() again before navigating between floors.");
+        }
+        building.checkMove(this.floor, floorNum);
+        building.moveVisitor(this.floor, floorNum);
+        Events.emit(EventType.FLOOR_CHANGED, building, building.getName(), floorNum);
+        this.floor = floorNum;
+    }
+
+    public void goUp() {
+        this.goToFloor(this.floor + 1);
+    }
+
+    public void goDown() {
+        this.goToFloor(this.floor - 1);
+    }
+
+    /**
+     * Leaves the building. Visitors can only leave from the first floor.
+     *
+     * @throws RuntimeException if the visitor has already left or isn't on the first floor
+     */
+    public void exit() {
+        if (this.floor == -1) {
+            throw new RuntimeException("This visitor has already left " + building.getName() + ".");
+        }
+        if (this.floor > 1) {
+            throw new RuntimeException("You have fallen out a window from floor #" + this.floor + "!");
+        }
+        building.moveVisitor(1, -1);
+        Events.emit(EventType.EXITED, building, building.getName());
+        this.floor = -1;
+    }
+
+    public String toString() {
+        return isInside() ? "Visitor on floor " + this.floor + " of " + building.getName() : "Visitor who has left " + building.getName();
+    }
+
+    /**
+     * Sends thousands of visitors through a library at once and prints the
+     * head count per floor while they are inside.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        EventSink previousSink = Events.getSink();
+        Events.setSink(Events.SILENT);
+        Library neilson = new Library("Neilson Library", "7 Neilson Drive, Northampton, MA", 5);
+        int nThreads = 8;
+        int visitorsPerThread = 1_000;
+        CyclicBarrier inside = new CyclicBarrier(nThreads + 1);
+        CyclicBarrier counted = new CyclicBarrier(nThreads + 1);
+        Thread[] threads = new Thread[nThreads];
+        for (int t = 0; t < nThreads; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                Visit[] visits = new Visit[visitorsPerThread];
+                for (int v = 0; v < visitorsPerThread; v++) {
+                    visits[v] = neilson.visit();
+                    visits[v].goToFloor(1 + random.nextInt(neilson.getFloors()));
+                }
+                try {
+                    inside.await();  // Everyone is in: let main count them
+                    counted.await();
+                } catch (Exception e) {
+                    return;
+                }
+                for (Visit visit : visits) {
+                    visit.goToFloor(1);
+                    visit.exit();
+                }
+            });
+            threads[t].start();
+        }
+        try {
+            inside.await();
+            System.out.println(neilson.getOccupancy() + " visitors inside " + neilson.getName() + ":");
+            for (int f = 1; f <= neilson.getFloors(); f++) {
+                System.out.println("  Floor " + f + ": " + neilson.getOccupancy(f));
+            }
+            counted.await();
+        } catch (BrokenBarrierException e) {
+            throw new RuntimeException(e);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.println("After everyone left: " + neilson.getOccupancy() + " visitors inside");
+        Events.setSink(previousSink);
+    }
+}
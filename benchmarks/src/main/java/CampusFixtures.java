@@ -0,0 +1,191 @@
+import campus.bench.Fixtures;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Builds the campus objects CampusBenchmark measures and runs its operations
+ * on them (see campus.bench.Fixtures for why this class is separate).
+ * Events are silenced and System.out is discarded, so printing doesn't end
+ * up in the measurements.
+ */
+public class CampusFixtures implements Fixtures {
+
+    // Keys the operations look up: no student lives in a house (a library's titles are picked in library())
+    private static final int TITLE_KEYS = 1 << 12;
+    private static final Student[] STUDENTS = new Student[1 << 12];
+    private static final Building[] BUILDINGS = new Building[1 << 10];
+
+    /* A library and the titles looked up in it; even keys are titles it holds, odd keys are not */
+    private static final class BenchLibrary {
+        final Library library;
+        final String[] titles = new String[TITLE_KEYS];
+
+        BenchLibrary(Library library) {
+            this.library = library;
+        }
+    }
+
+    static {
+        for (int i = 0; i < STUDENTS.length; i++) {
+            STUDENTS[i] = new Student("Visitor " + i, "V" + i, 2027);
+        }
+        for (int i = 0; i < BUILDINGS.length; i++) {
+            BUILDINGS[i] = new Building("Benchmark Hall " + i, "1 Bench St", 2);
+        }
+    }
+
+    public CampusFixtures() {
+        Events.setSink(Events.SILENT);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // JMH reports through its own channel
+    }
+
+    @Override
+    public Object campusMap(int size) {
+        CampusMap map = new CampusMap();
+        for (int i = 0; i < size; i++) {
+            map.addBuilding(new Building("Hall " + i, i + " College Lane", 1 + i % 5));
+        }
+        return map;
+    }
+
+    /* A library holding titles "Title 0", "Title 2", ... "Title 2(size-1)", so the odd numbers are never held */
+    @Override
+    public Object library(int size) {
+        BenchLibrary bench = new BenchLibrary(new Library("Bench Library", "1 Bench St", 3, size));
+        for (int i = 0; i < size; i++) {
+            bench.library.addTitle("Title " + 2 * i);
+        }
+        // Spread the held keys over the whole collection, whatever its size, so exactly half the lookups hit
+        for (int k = 0; k < TITLE_KEYS; k += 2) {
+            long held = (long) (k / 2) * Math.max(1, size) / (TITLE_KEYS / 2);
+            bench.titles[k] = "Title " + 2 * held;
+            bench.titles[k + 1] = "Title " + (2 * held + 1);
+        }
+        return bench;
+    }
+
+    /* A house with size residents, or with just STUDENTS[0] if size is 0 */
+    @Override
+    public Object house(int size) {
+        House house = new House("Bench House", "1 Bench St", 3, true, true);
+        ArrayList<Student> residents = new ArrayList<>();
+        if (size == 0) {
+            residents.add(STUDENTS[0]);
+        }
+        for (int i = 0; i < size; i++) {
+            residents.add(new Student("Resident " + i, "R" + i, 2026));
+        }
+        house.moveInAll(residents);
+        return house;
+    }
+
+    @Override
+    public Object cafe() {
+        return new Cafe("Bench Cafe", "1 Bench St", 1);
+    }
+
+    @Override
+    public Object enteredBuilding() {
+        Building building = new Building("Bench Hall", "1 Bench St", 10);
+        building.enter();
+        return building;
+    }
+
+    @Override
+    public void addAndRemoveBuilding(Object map, int key, Blackhole bh) {
+        CampusMap campus = (CampusMap) map;
+        Building building = BUILDINGS[key & (BUILDINGS.length - 1)];
+        campus.addBuilding(building);
+        bh.consume(campus.removeBuilding(building));
+    }
+
+    @Override
+    public void mapToString(Object map, Blackhole bh) {
+        bh.consume(map.toString());
+    }
+
+    @Override
+    public void writeDirectoryPage(Object map, int key, Blackhole bh) {
+        StringWriter page = new StringWriter();
+        bh.consume(((CampusMap) map).writeDirectoryPage(page, key & 15, 20));
+        bh.consume(page);
+    }
+
+    @Override
+    public void checkOutAndReturn(Object library, int key, Blackhole bh) {
+        BenchLibrary bench = (BenchLibrary) library;
+        String title = bench.titles[key & (TITLE_KEYS - 1)];
+        bh.consume(bench.library.checkOut(title));
+        bh.consume(bench.library.returnBook(title));
+    }
+
+    @Override
+    public void isAvailable(Object library, int key, Blackhole bh) {
+        BenchLibrary bench = (BenchLibrary) library;
+        bh.consume(bench.library.isAvailable(bench.titles[key & (TITLE_KEYS - 1)]));
+    }
+
+    @Override
+    public void printCollection(Object library, Blackhole bh) {
+        ((BenchLibrary) library).library.printCollection();
+        bh.consume(library);
+    }
+
+    @Override
+    public void moveInAndOut(Object house, int key, Blackhole bh) {
+        House h = (House) house;
+        Student student = STUDENTS[key & (STUDENTS.length - 1)];
+        h.moveIn(student);
+        bh.consume(h.moveOut(student));
+    }
+
+    @Override
+    public void isResident(Object house, int key, Blackhole bh) {
+        bh.consume(((House) house).isResident(STUDENTS[key & (STUDENTS.length - 1)]));
+    }
+
+    @Override
+    public void moveInResidentThrowing(Object house, Blackhole bh) {
+        try {
+            ((House) house).moveIn(STUDENTS[0]);
+        } catch (RuntimeException e) {
+            bh.consume(e);
+        }
+    }
+
+    @Override
+    public void tryMoveInResident(Object house, Blackhole bh) {
+        bh.consume(((House) house).tryMoveIn(STUDENTS[0]));
+    }
+
+    @Override
+    public void sellCoffee(Object cafe, Blackhole bh) {
+        Cafe c = (Cafe) cafe;
+        c.sellCoffee(12, 1, 1);
+        bh.consume(c.getCups());
+    }
+
+    @Override
+    public void goToFloor(Object building, int key, Blackhole bh) {
+        Building b = (Building) building;
+        b.goToFloor(1 + (key & Integer.MAX_VALUE) % 10);
+        bh.consume(b);
+    }
+
+    @Override
+    public void goToBadFloorThrowing(Object building, Blackhole bh) {
+        try {
+            ((Building) building).goToFloor(99);
+        } catch (RuntimeException e) {
+            bh.consume(e);
+        }
+    }
+
+    @Override
+    public void tryGoToBadFloor(Object building, Blackhole bh) {
+        bh.consume(((Building) building).tryGoToFloor(99));
+    }
+}
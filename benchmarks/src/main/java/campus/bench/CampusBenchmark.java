@@ -0,0 +1,250 @@
+package campus.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * JMH benchmarks for the campus classes. Build and run from the top of the repo:
+ *
+ *     mvn -B install
+ *     mvn -B -f benchmarks/pom.xml package
+ *     java -jar benchmarks/target/benchmarks.jar [regexp] [-p size=1000] [-t 4] [-prof gc]
+ *
+ * Each benchmark runs for every size (buildings, titles or residents). Classes
+ * that aren't thread-safe (CampusMap, House, Building) get one instance per
+ * thread, so -t shows how they scale with independent copies. Library and Cafe
+ * are shared by all threads: the *Contended benchmarks run four threads on one
+ * instance, and the library groups mix readers with a writer. Thread counts
+ * aren't a @Param, since JMH fixes them per benchmark: the *Contended ones use
+ * @Threads(4), the groups @GroupThreads, and -t sets the rest. -prof gc adds
+ * the bytes allocated per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CampusBenchmark {
+
+    private static final Fixtures CAMPUS = Fixtures.load();
+
+    /* The keys one thread looks up; threads start at different keys */
+    @State(Scope.Thread)
+    public static class Keys {
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setup(ThreadParams thread) {
+            next = thread.getThreadIndex() * 7919;
+        }
+
+        int next() {
+            return next++;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class MapState {
+        @Param({"1000", "100000"})
+        public int size;
+        Object map;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            map = CAMPUS.campusMap(size);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LibraryState {
+        @Param({"1000", "100000"})
+        public int size;
+        Object library;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            library = CAMPUS.library(size);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class HouseState {
+        @Param({"1000", "100000"})
+        public int size;
+        Object house;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            house = CAMPUS.house(size);
+        }
+    }
+
+    /* A house with one known resident, for the failed move-in benchmarks */
+    @State(Scope.Thread)
+    public static class ResidentState {
+        Object house;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            house = CAMPUS.house(0);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CafeState {
+        Object cafe;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            cafe = CAMPUS.cafe();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BuildingState {
+        Object building;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            building = CAMPUS.enteredBuilding();
+        }
+    }
+
+    // CampusMap
+
+    @Benchmark
+    public void mapAddAndRemoveBuilding(MapState s, Keys keys, Blackhole bh) {
+        CAMPUS.addAndRemoveBuilding(s.map, keys.next(), bh);
+    }
+
+    @Benchmark
+    public void mapToString(MapState s, Blackhole bh) {
+        CAMPUS.mapToString(s.map, bh);
+    }
+
+    @Benchmark
+    public void mapWriteDirectoryPage(MapState s, Keys keys, Blackhole bh) {
+        CAMPUS.writeDirectoryPage(s.map, keys.next(), bh);
+    }
+
+    // Library
+
+    @Benchmark
+    public void libraryCheckOutAndReturn(LibraryState s, Keys keys, Blackhole bh) {
+        CAMPUS.checkOutAndReturn(s.library, keys.next(), bh);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void libraryCheckOutAndReturnContended(LibraryState s, Keys keys, Blackhole bh) {
+        CAMPUS.checkOutAndReturn(s.library, keys.next(), bh);
+    }
+
+    @Benchmark
+    public void libraryIsAvailable(LibraryState s, Keys keys, Blackhole bh) {
+        CAMPUS.isAvailable(s.library, keys.next(), bh);
+    }
+
+    @Benchmark
+    public void libraryPrintCollection(LibraryState s, Blackhole bh) {
+        CAMPUS.printCollection(s.library, bh);
+    }
+
+    /* Three desks checking availability while one checks books out and back in */
+    @Benchmark
+    @Group("libraryLookups")
+    @GroupThreads(3)
+    public void lookupsIsAvailable(LibraryState s, Keys keys, Blackhole bh) {
+        CAMPUS.isAvailable(s.library, keys.next(), bh);
+    }
+
+    @Benchmark
+    @Group("libraryLookups")
+    @GroupThreads(1)
+    public void lookupsCheckOutAndReturn(LibraryState s, Keys keys, Blackhole bh) {
+        CAMPUS.checkOutAndReturn(s.library, keys.next(), bh);
+    }
+
+    /* Printing the collection while it keeps changing, which invalidates the cached listing */
+    @Benchmark
+    @Group("libraryPrintWhileChanging")
+    @GroupThreads(1)
+    public void printWhileChangingPrint(LibraryState s, Blackhole bh) {
+        CAMPUS.printCollection(s.library, bh);
+    }
+
+    @Benchmark
+    @Group("libraryPrintWhileChanging")
+    @GroupThreads(1)
+    public void printWhileChangingCheckOut(LibraryState s, Keys keys, Blackhole bh) {
+        CAMPUS.checkOutAndReturn(s.library, keys.next(), bh);
+    }
+
+    // House
+
+    @Benchmark
+    public void houseMoveInAndOut(HouseState s, Keys keys, Blackhole bh) {
+        CAMPUS.moveInAndOut(s.house, keys.next(), bh);
+    }
+
+    @Benchmark
+    public void houseIsResident(HouseState s, Keys keys, Blackhole bh) {
+        CAMPUS.isResident(s.house, keys.next(), bh);
+    }
+
+    @Benchmark
+    public void houseMoveInResidentThrowing(ResidentState s, Blackhole bh) {
+        CAMPUS.moveInResidentThrowing(s.house, bh);
+    }
+
+    @Benchmark
+    public void houseTryMoveInResident(ResidentState s, Blackhole bh) {
+        CAMPUS.tryMoveInResident(s.house, bh);
+    }
+
+    // Cafe
+
+    @Benchmark
+    public void cafeSellCoffee(CafeState s, Blackhole bh) {
+        CAMPUS.sellCoffee(s.cafe, bh);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void cafeSellCoffeeContended(CafeState s, Blackhole bh) {
+        CAMPUS.sellCoffee(s.cafe, bh);
+    }
+
+    // Building
+
+    @Benchmark
+    public void buildingGoToFloor(BuildingState s, Keys keys, Blackhole bh) {
+        CAMPUS.goToFloor(s.building, keys.next(), bh);
+    }
+
+    @Benchmark
+    public void buildingGoToBadFloorThrowing(BuildingState s, Blackhole bh) {
+        CAMPUS.goToBadFloorThrowing(s.building, bh);
+    }
+
+    @Benchmark
+    public void buildingTryGoToBadFloor(BuildingState s, Blackhole bh) {
+        CAMPUS.tryGoToBadFloor(s.building, bh);
+    }
+}
@@ -0,0 +1,74 @@
+package campus.bench;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The operations CampusBenchmark measures. The campus classes are in the
+ * default package, which JMH won't generate benchmarks for and which a named
+ * package can't import, so the benchmarks reach them through this interface,
+ * implemented by CampusFixtures in the default package. It has a single
+ * implementation, so the JIT inlines these calls.
+ *
+ * Fixtures are passed around as Object; key picks which title, student or
+ * floor an operation uses. Results go to the Blackhole.
+ */
+public interface Fixtures {
+
+    /* Builders; size is the number of buildings, titles or residents */
+    Object campusMap(int size);
+
+    Object library(int size);
+
+    Object house(int size);
+
+    Object cafe();
+
+    Object enteredBuilding();
+
+    /* CampusMap */
+    void addAndRemoveBuilding(Object map, int key, Blackhole bh);
+
+    void mapToString(Object map, Blackhole bh);
+
+    void writeDirectoryPage(Object map, int key, Blackhole bh);
+
+    /* Library; half of the keys are titles it holds */
+    void checkOutAndReturn(Object library, int key, Blackhole bh);
+
+    void isAvailable(Object library, int key, Blackhole bh);
+
+    void printCollection(Object library, Blackhole bh);
+
+    /* House; keys are students who don't live there */
+    void moveInAndOut(Object house, int key, Blackhole bh);
+
+    void isResident(Object house, int key, Blackhole bh);
+
+    void moveInResidentThrowing(Object house, Blackhole bh);
+
+    void tryMoveInResident(Object house, Blackhole bh);
+
+    /* Cafe */
+    void sellCoffee(Object cafe, Blackhole bh);
+
+    /* Building */
+    void goToFloor(Object building, int key, Blackhole bh);
+
+    void goToBadFloorThrowing(Object building, Blackhole bh);
+
+    void tryGoToBadFloor(Object building, Blackhole bh);
+
+    /**
+     * Loads CampusFixtures from the default package.
+     *
+     * @return the fixtures
+     * @throws RuntimeException if CampusFixtures isn't on the class path
+     */
+    static Fixtures load() {
+        try {
+            return (Fixtures) Class.forName("CampusFixtures").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Cannot load CampusFixtures; is the campus jar on the class path?", e);
+        }
+    }
+}